@@ -0,0 +1,48 @@
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 健康检查基准测试的基类
+ * 子类在 @Setup 中启动本地替身并创建健康检查器，这里统一测量单调用方与16线程竞争两种场景下的
+ * 吞吐与延迟分布，分配量通过 -prof gc 查看 gc.alloc.rate.norm
+ * 运行方式：java -jar benchmarks.jar -prof gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public abstract class AbstractHealthBenchmark {
+
+    /**
+     * 被测的健康检查器
+     *
+     * @return {@link HealthIndicator}
+     */
+    protected abstract HealthIndicator indicator();
+
+    @Benchmark
+    @Threads(1)
+    public Health single() {
+        return indicator().health();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Health contended() {
+        return indicator().health();
+    }
+}
@@ -0,0 +1,170 @@
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.sun.net.httpserver.HttpServer;
+import org.bson.Document;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.SimpleMongoClientDatabaseFactory;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+
+/**
+ * 基准测试用的本地替身
+ * HTTP桩服务模拟下游实例的 /actuator/health 与配置中心，
+ * Redis与Mongo使用进程内的假实现，只返回固定结果，不产生网络开销
+ */
+public final class BenchmarkStubs {
+
+    private static final byte[] HEALTH_UP = "{\"status\":\"UP\"}".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] ENVIRONMENT = ("{\"name\":\"base\",\"profiles\":[\"dev\"],\"label\":null,"
+        + "\"version\":null,\"state\":null,\"propertySources\":[]}").getBytes(StandardCharsets.UTF_8);
+
+    private static final String ENVIRONMENT_ETAG = "\"environment-v1\"";
+
+    private static final byte[] OK_BYTES = "ok".getBytes(StandardCharsets.UTF_8);
+
+    private BenchmarkStubs() {
+    }
+
+    /**
+     * 启动HTTP桩服务，/actuator/health 返回UP，其他路径返回空的配置中心Environment，
+     * 配置中心的响应带ETag，If-None-Match 匹配时返回304
+     *
+     * @return 已启动的服务，端口随机
+     */
+    public static HttpServer startHttpStub() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/actuator/health", exchange -> respond(exchange, HEALTH_UP));
+        server.createContext("/", exchange -> {
+            exchange.getResponseHeaders().add("ETag", ENVIRONMENT_ETAG);
+            if (ENVIRONMENT_ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            respond(exchange, ENVIRONMENT);
+        });
+        server.setExecutor(Executors.newFixedThreadPool(16));
+        server.start();
+        return server;
+    }
+
+    private static void respond(com.sun.net.httpserver.HttpExchange exchange, byte[] body) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(body);
+        }
+    }
+
+    /**
+     * 进程内的Redis连接工厂，GET返回"ok"，INFO返回固定版本
+     *
+     * @return {@link RedisConnectionFactory}
+     */
+    public static RedisConnectionFactory fakeRedisConnectionFactory() {
+        Properties serverInfo = new Properties();
+        serverInfo.setProperty("redis_version", "6.2.6");
+        RedisConnection connection = (RedisConnection) Proxy.newProxyInstance(
+            BenchmarkStubs.class.getClassLoader(), new Class<?>[]{RedisConnection.class},
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "get":
+                        return OK_BYTES;
+                    case "ping":
+                        return "PONG";
+                    case "info":
+                        return serverInfo;
+                    case "isClosed":
+                    case "isQueueing":
+                    case "isPipelined":
+                        return false;
+                    default:
+                        return null;
+                }
+            });
+        return (RedisConnectionFactory) Proxy.newProxyInstance(
+            BenchmarkStubs.class.getClassLoader(), new Class<?>[]{RedisConnectionFactory.class},
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getConnection":
+                        return connection;
+                    case "getConvertPipelineAndTxResults":
+                        return true;
+                    default:
+                        return null;
+                }
+            });
+    }
+
+    /**
+     * 进程内的MongoTemplate，计数、命令与 replSetGetStatus 都返回固定结果，不会连接服务器
+     *
+     * @return {@link MongoTemplate}
+     */
+    public static MongoTemplate fakeMongoTemplate() {
+        return new FakeMongoTemplate();
+    }
+
+    private static class FakeMongoTemplate extends MongoTemplate {
+
+        private final Document buildInfo = new Document("version", "4.4.10").append("ok", 1.0);
+
+        @SuppressWarnings("unchecked")
+        private final MongoCollection<Document> collection = (MongoCollection<Document>) Proxy.newProxyInstance(
+            BenchmarkStubs.class.getClassLoader(), new Class<?>[]{MongoCollection.class},
+            (proxy, method, args) -> method.getReturnType() == long.class ? 0L : null);
+
+        private final Document replSetStatus = new Document("set", "bench").append("ok", 1.0)
+            .append("members", Collections.singletonList(new Document("name", "127.0.0.1:27017")
+                .append("stateStr", "PRIMARY").append("health", 1.0).append("optimeDate", new Date())));
+
+        private final MongoDatabaseFactory databaseFactory;
+
+        FakeMongoTemplate() {
+            // MongoClients.create 不会立即建立连接
+            super(new SimpleMongoClientDatabaseFactory(MongoClients.create("mongodb://127.0.0.1:1"), "bench"));
+            MongoDatabase admin = (MongoDatabase) Proxy.newProxyInstance(BenchmarkStubs.class.getClassLoader(),
+                new Class<?>[]{MongoDatabase.class},
+                (proxy, method, args) -> "runCommand".equals(method.getName()) ? replSetStatus : null);
+            MongoDatabaseFactory delegate = super.getMongoDatabaseFactory();
+            this.databaseFactory = (MongoDatabaseFactory) Proxy.newProxyInstance(
+                BenchmarkStubs.class.getClassLoader(), new Class<?>[]{MongoDatabaseFactory.class},
+                (proxy, method, args) -> "getMongoDatabase".equals(method.getName()) && args != null
+                    ? admin : method.invoke(delegate, args));
+        }
+
+        @Override
+        public MongoDatabaseFactory getMongoDatabaseFactory() {
+            // 父类构造期间字段尚未赋值
+            return databaseFactory != null ? databaseFactory : super.getMongoDatabaseFactory();
+        }
+
+        @Override
+        public MongoCollection<Document> getCollection(String collectionName) {
+            return collection;
+        }
+
+        @Override
+        public Document executeCommand(String jsonCommand) {
+            return buildInfo;
+        }
+
+        @Override
+        public Document executeCommand(Document command) {
+            return buildInfo;
+        }
+    }
+}
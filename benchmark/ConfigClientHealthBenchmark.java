@@ -0,0 +1,38 @@
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.cloud.config.client.ConfigClientProperties;
+import org.springframework.core.env.StandardEnvironment;
+
+/**
+ * 配置中心健康检查基准，替身为本地HTTP桩服务
+ *
+ * @see ConfigClientHealthIndicator
+ */
+public class ConfigClientHealthBenchmark extends AbstractHealthBenchmark {
+
+    private HttpServer server;
+
+    private ConfigClientHealthIndicator indicator;
+
+    @Setup
+    public void setUp() throws Exception {
+        server = BenchmarkStubs.startHttpStub();
+        ConfigClientProperties properties = new ConfigClientProperties(new StandardEnvironment());
+        properties.setUri(new String[]{"http://127.0.0.1:" + server.getAddress().getPort()});
+        indicator = new ConfigClientHealthIndicator();
+        indicator.properties = properties;
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        indicator.destroy();
+        server.stop(0);
+    }
+
+    @Override
+    protected HealthIndicator indicator() {
+        return indicator;
+    }
+}
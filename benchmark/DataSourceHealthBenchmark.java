@@ -0,0 +1,34 @@
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+/**
+ * 数据库健康检查基准，替身为内嵌H2
+ *
+ * @see DataSourceHealthIndicator
+ */
+public class DataSourceHealthBenchmark extends AbstractHealthBenchmark {
+
+    private EmbeddedDatabase database;
+
+    private DataSourceHealthIndicator indicator;
+
+    @Setup
+    public void setUp() {
+        database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+        indicator = new DataSourceHealthIndicator(database);
+    }
+
+    @TearDown
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    @Override
+    protected HealthIndicator indicator() {
+        return indicator;
+    }
+}
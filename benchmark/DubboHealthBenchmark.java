@@ -0,0 +1,66 @@
+import org.apache.dubbo.config.annotation.DubboReference;
+import org.apache.dubbo.config.spring.ServiceBean;
+import org.apache.dubbo.config.spring.context.annotation.EnableDubbo;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+
+/**
+ * dubbo健康检查基准，替身为injvm协议的本地provider
+ *
+ * @see DubboHealthIndicator
+ */
+public class DubboHealthBenchmark extends AbstractHealthBenchmark {
+
+    private AnnotationConfigApplicationContext context;
+
+    private DubboHealthIndicator indicator;
+
+    @Setup
+    public void setUp() {
+        System.setProperty("dubbo.application.name", "health-benchmark");
+        System.setProperty("dubbo.registry.address", "N/A");
+        System.setProperty("dubbo.protocol.name", "injvm");
+        context = new AnnotationConfigApplicationContext(BenchmarkDubboConfig.class);
+        indicator = context.getBean(DubboHealthIndicator.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Override
+    protected HealthIndicator indicator() {
+        return indicator;
+    }
+
+    public interface BenchEchoService {
+
+        String hello();
+    }
+
+    @EnableDubbo
+    static class BenchmarkDubboConfig {
+
+        @DubboReference(injvm = true, check = false)
+        private BenchEchoService benchEchoService;
+
+        @Bean
+        public ServiceBean<BenchEchoService> benchEchoServiceBean() {
+            ServiceBean<BenchEchoService> serviceBean = new ServiceBean<>();
+            serviceBean.setInterface(BenchEchoService.class);
+            serviceBean.setRef(() -> "ok");
+            return serviceBean;
+        }
+
+        @Bean
+        public DubboHealthIndicator dubboHealthIndicator() {
+            DubboHealthIndicator dubboHealthIndicator = new DubboHealthIndicator();
+            dubboHealthIndicator.registerInvokeCheckReferenceBeanName("bench", BenchEchoService.class.getName());
+            return dubboHealthIndicator;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+import com.netflix.appinfo.InstanceInfo;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 尤里卡实例探测基准，替身为本地HTTP桩服务
+ * 测量一次探测全部实例的开销，实例数由 instances 参数指定
+ *
+ * @see EurekaInstanceProber
+ */
+public class EurekaHealthBenchmark extends AbstractHealthBenchmark {
+
+    @Param({"10", "100"})
+    public int instances;
+
+    private HttpServer server;
+
+    private EurekaInstanceProber prober;
+
+    private HealthIndicator indicator;
+
+    @Setup
+    public void setUp() throws Exception {
+        server = BenchmarkStubs.startHttpStub();
+        String healthCheckUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/actuator/health";
+        List<InstanceInfo> instanceInfos = new ArrayList<>(instances);
+        for (int i = 0; i < instances; i++) {
+            instanceInfos.add(InstanceInfo.Builder.newBuilder()
+                .setAppName("BENCH")
+                .setInstanceId("bench-" + i)
+                .setHostName("127.0.0.1")
+                .setHealthCheckUrls(null, healthCheckUrl, null)
+                .build());
+        }
+        prober = new EurekaInstanceProber(16, 2000, 5000, new HealthProbeMetrics("eureka"));
+        indicator = () -> Health.up().withDetails(prober.probeAll(instanceInfos)).build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        prober.shutdown();
+        server.stop(0);
+    }
+
+    @Override
+    protected HealthIndicator indicator() {
+        return indicator;
+    }
+}
@@ -0,0 +1,22 @@
+import org.openjdk.jmh.annotations.Setup;
+import org.springframework.boot.actuate.health.HealthIndicator;
+
+/**
+ * mongodb健康检查基准，替身为进程内的假MongoTemplate
+ *
+ * @see MongoHealthIndicator
+ */
+public class MongoHealthBenchmark extends AbstractHealthBenchmark {
+
+    private MongoHealthIndicator indicator;
+
+    @Setup
+    public void setUp() {
+        indicator = new MongoHealthIndicator(BenchmarkStubs.fakeMongoTemplate());
+    }
+
+    @Override
+    protected HealthIndicator indicator() {
+        return indicator;
+    }
+}
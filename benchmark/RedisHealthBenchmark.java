@@ -0,0 +1,22 @@
+import org.openjdk.jmh.annotations.Setup;
+import org.springframework.boot.actuate.health.HealthIndicator;
+
+/**
+ * redis健康检查基准，替身为进程内的假连接
+ *
+ * @see RedisHealthIndicator
+ */
+public class RedisHealthBenchmark extends AbstractHealthBenchmark {
+
+    private RedisHealthIndicator indicator;
+
+    @Setup
+    public void setUp() {
+        indicator = new RedisHealthIndicator(BenchmarkStubs.fakeRedisConnectionFactory());
+    }
+
+    @Override
+    protected HealthIndicator indicator() {
+        return indicator;
+    }
+}
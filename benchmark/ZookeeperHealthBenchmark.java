@@ -0,0 +1,44 @@
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.curator.test.TestingServer;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.actuate.health.HealthIndicator;
+
+/**
+ * zookeeper健康检查基准，替身为Curator的TestingServer
+ *
+ * @see ZookeeperHealthIndicator
+ */
+public class ZookeeperHealthBenchmark extends AbstractHealthBenchmark {
+
+    private TestingServer server;
+
+    private CuratorFramework curator;
+
+    private ZookeeperHealthIndicator indicator;
+
+    @Setup
+    public void setUp() throws Exception {
+        server = new TestingServer(true);
+        curator = CuratorFrameworkFactory.newClient(server.getConnectString(), new RetryOneTime(100));
+        curator.start();
+        curator.blockUntilConnected();
+        indicator = new ZookeeperHealthIndicator();
+        indicator.curator = curator;
+        indicator.afterPropertiesSet();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        indicator.destroy();
+        curator.close();
+        server.close();
+    }
+
+    @Override
+    protected HealthIndicator indicator() {
+        return indicator;
+    }
+}
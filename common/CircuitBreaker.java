@@ -0,0 +1,130 @@
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 健康检查的熔断状态
+ * 依赖连续失败达到阈值后熔断(OPEN)，退避期间的调用直接返回最近一次的失败结果；
+ * 退避结束后进入半开(HALF_OPEN)，只放行一个试探，其余调用仍返回失败结果；
+ * 试探失败时退避按倍数增长直至上限，成功时关闭熔断，退避随后续每次成功按倍数缩短回初始值
+ * 阻塞与响应式的熔断健康检查器共用该状态机
+ *
+ * @see CircuitBreakerHealthIndicator
+ * @see ReactiveCircuitBreakerHealthIndicator
+ */
+final class CircuitBreaker {
+
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final Set<Status> failureStatuses;
+
+    private final int failureThreshold;
+
+    private final long initialBackoffMs;
+
+    private final long maxBackoffMs;
+
+    private final double multiplier;
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+
+    private volatile int failures;
+
+    private volatile long backoffMs;
+
+    private volatile long openUntilNanos;
+
+    private volatile Health lastFailure;
+
+    /**
+     * 创建熔断状态
+     *
+     * @param failureStatuses  视为失败的状态
+     * @param failureThreshold 触发熔断的连续失败次数
+     * @param initialBackoffMs 初始退避，毫秒
+     * @param maxBackoffMs     最大退避，毫秒
+     * @param multiplier       退避的增长倍数
+     */
+    CircuitBreaker(Set<Status> failureStatuses, int failureThreshold, long initialBackoffMs, long maxBackoffMs,
+                   double multiplier) {
+        this.failureStatuses = new LinkedHashSet<>(failureStatuses);
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.initialBackoffMs = initialBackoffMs;
+        this.maxBackoffMs = Math.max(initialBackoffMs, maxBackoffMs);
+        this.multiplier = Math.max(1.0, multiplier);
+        this.backoffMs = initialBackoffMs;
+    }
+
+    /**
+     * 申请一次探测
+     *
+     * @return CLOSED时正常探测，HALF_OPEN时为半开试探，OPEN时应返回 {@link #shortCircuit()}
+     */
+    State acquire() {
+        State current = state.get();
+        if (current == State.CLOSED) {
+            return State.CLOSED;
+        }
+        if (current == State.OPEN && System.nanoTime() - openUntilNanos >= 0
+            && state.compareAndSet(State.OPEN, State.HALF_OPEN)) {
+            return State.HALF_OPEN;
+        }
+        return State.OPEN;
+    }
+
+    /**
+     * 记录探测结果
+     *
+     * @param health 探测结果
+     * @param trial  是否为半开试探
+     */
+    synchronized void record(Health health, boolean trial) {
+        if (!failureStatuses.contains(health.getStatus())) {
+            failures = 0;
+            backoffMs = Math.max(initialBackoffMs, (long) (backoffMs / multiplier));
+            state.set(State.CLOSED);
+            return;
+        }
+        lastFailure = health;
+        failures++;
+        if (trial) {
+            backoffMs = Math.min(maxBackoffMs, (long) (backoffMs * multiplier));
+        } else if (failures < failureThreshold) {
+            return;
+        }
+        openUntilNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoffMs);
+        state.set(State.OPEN);
+    }
+
+    /**
+     * 半开试探没有结果就结束(例如订阅被取消)时放弃试探，下一次调用重新试探
+     */
+    void abandonTrial() {
+        state.compareAndSet(State.HALF_OPEN, State.OPEN);
+    }
+
+    /**
+     * 短路返回最近一次的失败结果，附带 circuit 详情：状态、连续失败次数与距下次试探的毫秒数
+     *
+     * @return 健康状态
+     */
+    Health shortCircuit() {
+        Health last = lastFailure;
+        Map<String, Object> circuit = new LinkedHashMap<>();
+        circuit.put("state", state.get().name());
+        circuit.put("failures", failures);
+        circuit.put("retryInMs", Math.max(0, TimeUnit.NANOSECONDS.toMillis(openUntilNanos - System.nanoTime())));
+        return Health.status(last.getStatus())
+            .withDetails(last.getDetails())
+            .withDetail("circuit", circuit)
+            .build();
+    }
+}
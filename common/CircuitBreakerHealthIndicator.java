@@ -0,0 +1,60 @@
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.health.Status;
+
+import java.util.Set;
+
+/**
+ * 熔断健康检查器
+ * 依赖连续失败达到阈值后熔断(OPEN)，退避期间的调用直接返回最近一次的失败结果，不再等待驱动超时；
+ * 退避结束后进入半开(HALF_OPEN)，只放行一个试探，其余调用仍返回失败结果；
+ * 试探失败时退避按倍数增长直至上限，成功时关闭熔断，退避随后续每次成功按倍数缩短回初始值，
+ * 因此刚恢复的依赖再次失败时会更快熔断后再逐步放宽
+ * 短路返回的结果中附带 circuit 详情：状态、连续失败次数与距下次试探的毫秒数
+ *
+ * @see CircuitBreaker
+ * @see HealthIndicatorDecoratingPostProcessor
+ */
+public class CircuitBreakerHealthIndicator implements HealthIndicator {
+
+    private final HealthIndicator delegate;
+
+    private final CircuitBreaker breaker;
+
+    /**
+     * 创建熔断健康检查器
+     *
+     * @param delegate         被包装的健康检查器
+     * @param failureStatuses  视为失败的状态
+     * @param failureThreshold 触发熔断的连续失败次数
+     * @param initialBackoffMs 初始退避，毫秒
+     * @param maxBackoffMs     最大退避，毫秒
+     * @param multiplier       退避的增长倍数
+     */
+    public CircuitBreakerHealthIndicator(HealthIndicator delegate, Set<Status> failureStatuses, int failureThreshold,
+                                         long initialBackoffMs, long maxBackoffMs, double multiplier) {
+        this(delegate, new CircuitBreaker(failureStatuses, failureThreshold, initialBackoffMs, maxBackoffMs,
+            multiplier));
+    }
+
+    CircuitBreakerHealthIndicator(HealthIndicator delegate, CircuitBreaker breaker) {
+        this.delegate = delegate;
+        this.breaker = breaker;
+    }
+
+    @Override
+    public Health health() {
+        CircuitBreaker.State permit = breaker.acquire();
+        if (permit == CircuitBreaker.State.OPEN) {
+            return breaker.shortCircuit();
+        }
+        Health health;
+        try {
+            health = delegate.health();
+        } catch (Throwable t) {
+            health = Health.down().withException(t).build();
+        }
+        breaker.record(health, permit == CircuitBreaker.State.HALF_OPEN);
+        return health;
+    }
+}
@@ -0,0 +1,248 @@
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 并发探测工具
+ * 在有界线程池中并发执行一批探测任务，所有任务共享一个总的截止时间，
+ * 截止时间到达仍未完成的任务会被取消并标记为超时，已完成的结果照常返回；
+ * 线程池的队列有界，探测目标卡住使线程与队列都被占满时，新提交的任务直接标记为超时，不再无限堆积
+ *
+ * @see HealthStatuses#TIMEOUT
+ */
+public final class ConcurrentProbes {
+
+    /**
+     * 默认的等待队列容量
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    private ConcurrentProbes() {
+    }
+
+    /**
+     * 创建有界的探测线程池，线程数即并发上限，等待队列容量为 {@link #DEFAULT_QUEUE_CAPACITY}
+     *
+     * @param name        线程名前缀
+     * @param concurrency 并发上限
+     * @return {@link ExecutorService}
+     */
+    public static ExecutorService newExecutor(String name, int concurrency) {
+        return newExecutor(name, concurrency, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * 创建有界的探测线程池，线程数即并发上限，线程为守护线程且空闲后回收
+     * 队列已满时拒绝提交，{@link #invokeAll} 将被拒绝的任务标记为超时
+     *
+     * @param name          线程名前缀
+     * @param concurrency   并发上限
+     * @param queueCapacity 等待队列容量
+     * @return {@link ExecutorService}
+     */
+    public static ExecutorService newExecutor(String name, int concurrency, int queueCapacity) {
+        int threads = Math.max(1, concurrency);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(Math.max(1, queueCapacity)), daemonThreadFactory(name),
+            new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * 在支持虚拟线程的JDK(21+)上创建每任务一个虚拟线程的线程池，否则退回有界线程池
+     *
+     * @param name        退回有界线程池时的线程名前缀
+     * @param concurrency 退回有界线程池时的并发上限
+     * @return {@link ExecutorService}
+     */
+    public static ExecutorService newVirtualOrBoundedExecutor(String name, int concurrency) {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return newExecutor(name, concurrency);
+        }
+    }
+
+    /**
+     * 创建守护线程的线程工厂
+     *
+     * @param name 线程名前缀
+     * @return {@link ThreadFactory}
+     */
+    public static ThreadFactory daemonThreadFactory(String name) {
+        AtomicInteger index = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * 并发执行全部任务，在截止时间内收集结果
+     *
+     * @param executor   执行任务的线程池
+     * @param tasks      以探测目标为key的任务
+     * @param deadlineMs 总的截止时间，毫秒
+     * @return 与tasks顺序一致的结果
+     */
+    public static <K, V> Map<K, ProbeResult<V>> invokeAll(ExecutorService executor, Map<K, Callable<V>> tasks,
+                                                          long deadlineMs) {
+        return invokeAll(executor, tasks, deadlineMs, Collections.emptySet());
+    }
+
+    /**
+     * 并发执行全部任务，在截止时间内收集结果，其中callerKeys对应的任务在调用线程上执行
+     * 适用于只能由调用线程使用的资源，例如从连接池借出的连接，超时后线程池任务被取消时不会与归还连接并发；
+     * 调用线程上的任务不受截止时间约束，依赖其自身的超时
+     *
+     * @param executor   执行其余任务的线程池
+     * @param tasks      以探测目标为key的任务
+     * @param deadlineMs 总的截止时间，毫秒
+     * @param callerKeys 在调用线程上执行的任务
+     * @return 与tasks顺序一致的结果
+     */
+    public static <K, V> Map<K, ProbeResult<V>> invokeAll(ExecutorService executor, Map<K, Callable<V>> tasks,
+                                                          long deadlineMs, Set<K> callerKeys) {
+        long startTime = System.nanoTime();
+        long deadline = startTime + TimeUnit.MILLISECONDS.toNanos(deadlineMs);
+        Map<K, Future<ProbeResult<V>>> futures = new LinkedHashMap<>(tasks.size() * 2);
+        for (Map.Entry<K, Callable<V>> entry : tasks.entrySet()) {
+            Callable<V> task = entry.getValue();
+            if (!callerKeys.contains(entry.getKey())) {
+                try {
+                    futures.put(entry.getKey(), executor.submit(() -> call(task)));
+                } catch (RejectedExecutionException e) {
+                    // 队列已满或线程池已关闭，没有结果的任务按超时处理
+                    futures.put(entry.getKey(), null);
+                }
+            }
+        }
+        Map<K, ProbeResult<V>> callerResults = new LinkedHashMap<>(callerKeys.size() * 2);
+        for (K key : callerKeys) {
+            Callable<V> task = tasks.get(key);
+            if (task != null) {
+                callerResults.put(key, call(task));
+            }
+        }
+
+        Map<K, ProbeResult<V>> results = new LinkedHashMap<>(tasks.size() * 2);
+        boolean cancelled = false;
+        for (K key : tasks.keySet()) {
+            ProbeResult<V> callerResult = callerResults.get(key);
+            if (callerResult != null) {
+                results.put(key, callerResult);
+                continue;
+            }
+            Future<ProbeResult<V>> future = futures.get(key);
+            if (future == null) {
+                results.put(key, ProbeResult.timeout(System.nanoTime() - startTime));
+                continue;
+            }
+            ProbeResult<V> result;
+            try {
+                result = future.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                cancelled = true;
+                result = ProbeResult.timeout(System.nanoTime() - startTime);
+            } catch (ExecutionException e) {
+                result = ProbeResult.failure(e.getCause(), System.nanoTime() - startTime);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.cancel(true);
+                cancelled = true;
+                result = ProbeResult.timeout(System.nanoTime() - startTime);
+            }
+            results.put(key, result);
+        }
+        if (cancelled && executor instanceof ThreadPoolExecutor) {
+            // 已取消的任务在被线程取出前仍占用队列
+            ((ThreadPoolExecutor) executor).purge();
+        }
+        return results;
+    }
+
+    private static <V> ProbeResult<V> call(Callable<V> task) {
+        long startTime = System.nanoTime();
+        try {
+            V value = task.call();
+            return ProbeResult.success(value, System.nanoTime() - startTime);
+        } catch (Throwable t) {
+            return ProbeResult.failure(t, System.nanoTime() - startTime);
+        }
+    }
+
+    /**
+     * 单个探测任务的结果
+     */
+    public static final class ProbeResult<V> {
+
+        private final V value;
+
+        private final Throwable error;
+
+        private final boolean timedOut;
+
+        private final long elapsedNanos;
+
+        private ProbeResult(V value, Throwable error, boolean timedOut, long elapsedNanos) {
+            this.value = value;
+            this.error = error;
+            this.timedOut = timedOut;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        static <V> ProbeResult<V> success(V value, long elapsedNanos) {
+            return new ProbeResult<>(value, null, false, elapsedNanos);
+        }
+
+        static <V> ProbeResult<V> failure(Throwable error, long elapsedNanos) {
+            return new ProbeResult<>(null, error, false, elapsedNanos);
+        }
+
+        static <V> ProbeResult<V> timeout(long elapsedNanos) {
+            return new ProbeResult<>(null, null, true, elapsedNanos);
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        public Throwable getError() {
+            return error;
+        }
+
+        public boolean isSuccess() {
+            return !timedOut && error == null;
+        }
+
+        public boolean isTimedOut() {
+            return timedOut;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public long getElapsedMs() {
+            return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+import org.springframework.context.annotation.Bean;
+
+/**
+ * 默认的健康检查装饰配置
+ * 默认对并发的健康检查做单飞合并(包括响应式健康检查器)，可通过 management.health.single-flight.enabled=false 关闭
+ * 默认在依赖连续失败3次后按指数退避熔断(包括响应式健康检查器)，可通过 management.health.circuit-breaker.enabled=false 关闭
+ * management.health.snapshot.enabled=true 时，健康检查改为返回后台刷新的快照
+ *
+ * @see HealthIndicatorDecoratingPostProcessor
+ */
+public class DefaultHealthDecoratorConfig {
+
+    @Bean
+    public static HealthIndicatorDecoratingPostProcessor healthIndicatorDecoratingPostProcessor() {
+        return new HealthIndicatorDecoratingPostProcessor();
+    }
+
+}
@@ -0,0 +1,18 @@
+import org.springframework.context.annotation.Bean;
+
+/**
+ * 默认的健康分组配置
+ * 按健康检查器声明的开销等级生成 readiness/deep 分组，liveness 只包含进程自身的状态，
+ * 探针分别指向 /actuator/health/liveness 与 /actuator/health/readiness，扇出类检查只在 /actuator/health/deep 中执行
+ * 可通过 management.health.tiers.enabled=false 关闭
+ *
+ * @see HealthTierGroupsPostProcessor
+ */
+public class DefaultHealthTierConfig {
+
+    @Bean
+    public static HealthTierGroupsPostProcessor healthTierGroupsPostProcessor() {
+        return new HealthTierGroupsPostProcessor();
+    }
+
+}
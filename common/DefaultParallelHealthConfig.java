@@ -0,0 +1,26 @@
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.util.StringUtils;
+
+/**
+ * 默认的并发汇总健康检查配置
+ * management.health.parallel.enabled=true 时注册名为 dependencies 的健康检查，
+ * 探针指向 /actuator/health/dependencies 即可在一个截止时间内并发获取全部依赖的状态，
+ * 成员从健康检查注册表中移出并归入 dependencies，/actuator/health 对每个依赖只探测一次；
+ * 只归入 management.health.parallel.tier 等级(默认single-round-trip)的依赖，扇出类检查仍单独执行
+ *
+ * @see ParallelHealthIndicator
+ */
+public class DefaultParallelHealthConfig {
+
+    @Bean
+    @ConditionalOnProperty(value = "management.health.parallel.enabled", havingValue = "true")
+    public ParallelHealthIndicator dependenciesHealthIndicator(
+        @Value("${management.health.parallel.include:}") String include,
+        @Value("${management.health.parallel.deadline-ms:3000}") long deadlineMs,
+        @Value("${management.health.parallel.concurrency:16}") int concurrency) {
+        return new ParallelHealthIndicator(StringUtils.commaDelimitedListToSet(include), deadlineMs, concurrency);
+    }
+
+}
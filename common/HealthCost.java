@@ -0,0 +1,26 @@
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 声明健康检查器的开销等级
+ * 实际开销随配置变化时，可通过 management.health.tiers.overrides.[bean名称] 按bean覆盖
+ *
+ * @see HealthCostTier
+ */
+@Documented
+@Inherited
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface HealthCost {
+
+    /**
+     * 开销等级
+     *
+     * @return {@link HealthCostTier}
+     */
+    HealthCostTier value();
+}
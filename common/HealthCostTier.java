@@ -0,0 +1,61 @@
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.core.env.PropertyResolver;
+
+import java.util.Locale;
+
+/**
+ * 健康检查的开销等级
+ * 由 {@link HealthCost} 声明在健康检查器上，{@link HealthTierGroupsPostProcessor} 据此将检查器分配到
+ * readiness/deep 健康分组(liveness不按等级划分)，配置中写作 in-memory、single-round-trip、fan-out
+ *
+ * @see HealthCost
+ */
+public enum HealthCostTier {
+
+    /**
+     * 只读取进程内的状态，例如连接事件或后台刷新的快照，不产生网络请求
+     */
+    IN_MEMORY,
+
+    /**
+     * 对单个依赖发出一次往返，例如数据库校验查询、redis PING
+     */
+    SINGLE_ROUND_TRIP,
+
+    /**
+     * 扇出到多个远端，例如探测全部下游实例、全部服务提供者或全部配置中心地址
+     */
+    FAN_OUT;
+
+    private static final String OVERRIDES_PREFIX = "management.health.tiers.overrides.";
+
+    /**
+     * 解析配置中的等级，大小写与-/_均可
+     *
+     * @param value 等级
+     * @return {@link HealthCostTier}
+     */
+    public static HealthCostTier parse(String value) {
+        return valueOf(value.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * 确定健康检查器的等级
+     * 优先使用 management.health.tiers.overrides.[bean名称] 的配置，其次为类上的 {@link HealthCost}
+     *
+     * @param beanName     bean名称
+     * @param type         bean的类型，可为null
+     * @param resolver     配置
+     * @param defaultTier  都没有声明时的等级
+     * @return {@link HealthCostTier}
+     */
+    public static HealthCostTier resolve(String beanName, Class<?> type, PropertyResolver resolver,
+                                         HealthCostTier defaultTier) {
+        String override = resolver.getProperty(OVERRIDES_PREFIX + beanName);
+        if (override != null) {
+            return parse(override);
+        }
+        HealthCost cost = type != null ? AnnotatedElementUtils.findMergedAnnotation(type, HealthCost.class) : null;
+        return cost != null ? cost.value() : defaultTier;
+    }
+}
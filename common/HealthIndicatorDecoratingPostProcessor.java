@@ -0,0 +1,227 @@
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.actuate.health.HealthContributorRegistry;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.context.EnvironmentAware;
+import org.springframework.core.env.Environment;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * 健康检查器装饰处理器
+ * 对容器中的 {@link HealthIndicator} 按配置套上装饰器，并在actuator的健康检查注册表中以装饰后的检查器替换原bean，
+ * 健康端点与健康分组都经由注册表调用，bean本身保持不变，直接注入bean的调用方不经过装饰器
+ * (AbstractHealthIndicator.health() 为final方法，无法通过基于类的代理拦截)
+ * 阻塞与响应式两个注册表共用同一个装饰器实例，单飞、熔断与快照的状态不会分裂；
+ * 响应式健康检查器(例如 ReactiveMongoHealthIndicator)在响应式注册表中同样套上单飞与熔断，但不支持快照
+ * 配置 management.health.tiers.fan-out-snapshot-interval-ms 后，{@link HealthCostTier#FAN_OUT} 等级的检查器按该间隔在后台刷新快照，
+ * 将该处理器以静态@Bean注册后即可生效
+ *
+ * @see SingleFlightHealthIndicator
+ * @see CircuitBreakerHealthIndicator
+ * @see SnapshotHealthIndicator
+ * @see DefaultHealthDecoratorConfig
+ */
+public class HealthIndicatorDecoratingPostProcessor implements BeanPostProcessor, EnvironmentAware, DisposableBean {
+
+    private static final String SINGLE_FLIGHT_PREFIX = "management.health.single-flight.";
+
+    private static final String CIRCUIT_BREAKER_PREFIX = "management.health.circuit-breaker.";
+
+    private static final String SNAPSHOT_PREFIX = "management.health.snapshot.";
+
+    private static final String FAN_OUT_SNAPSHOT_INTERVAL = "management.health.tiers.fan-out-snapshot-interval-ms";
+
+    private Environment environment;
+
+    private ScheduledExecutorService scheduler;
+
+    private final List<SnapshotHealthIndicator> snapshots = new ArrayList<>();
+
+    /**
+     * bean名称到原始健康检查器
+     */
+    private final Map<String, HealthIndicator> indicators = new LinkedHashMap<>();
+
+    /**
+     * bean名称到装饰后的健康检查器
+     */
+    private final Map<String, HealthIndicator> decoratedIndicators = new HashMap<>();
+
+    /**
+     * bean名称到原始的响应式健康检查器，只在存在reactor时使用
+     */
+    private final Map<String, Object> reactiveIndicators = new LinkedHashMap<>();
+
+    /**
+     * bean名称到装饰后的响应式健康检查器
+     */
+    private final Map<String, Object> decoratedReactiveIndicators = new HashMap<>();
+
+    @Override
+    public void setEnvironment(Environment environment) {
+        this.environment = environment;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        // 注册表由全部健康检查bean构建，创建时这些bean都已经过该方法
+        if (bean instanceof HealthContributorRegistry) {
+            decorateRegistry((HealthContributorRegistry) bean);
+        } else if (ReactiveHealthRegistries.isRegistry(bean)) {
+            decorateReactiveRegistry(bean);
+        } else if (bean instanceof HealthIndicator) {
+            synchronized (this) {
+                indicators.put(beanName, (HealthIndicator) bean);
+            }
+        } else if (ReactiveHealthRegistries.isIndicator(bean)) {
+            synchronized (this) {
+                reactiveIndicators.put(beanName, bean);
+            }
+        }
+        return bean;
+    }
+
+    private synchronized void decorateRegistry(HealthContributorRegistry registry) {
+        indicators.forEach((beanName, indicator) -> {
+            String name = ParallelHealthIndicator.getName(beanName);
+            if (registry.getContributor(name) == indicator) {
+                HealthIndicator decorated = getDecorated(beanName, indicator);
+                if (decorated != indicator) {
+                    registry.unregisterContributor(name);
+                    registry.registerContributor(name, decorated);
+                }
+            }
+        });
+    }
+
+    private synchronized void decorateReactiveRegistry(Object registry) {
+        indicators.forEach((beanName, indicator) -> {
+            HealthIndicator decorated = getDecorated(beanName, indicator);
+            if (decorated != indicator) {
+                ReactiveHealthRegistries.replaceAdapted(registry, ParallelHealthIndicator.getName(beanName), decorated);
+            }
+        });
+        reactiveIndicators.forEach((beanName, indicator) -> {
+            Object decorated = decoratedReactiveIndicators.computeIfAbsent(beanName,
+                key -> decorateReactive(key, indicator));
+            if (decorated != indicator) {
+                ReactiveHealthRegistries.replace(registry, ParallelHealthIndicator.getName(beanName), indicator,
+                    decorated);
+            }
+        });
+    }
+
+    private HealthIndicator getDecorated(String beanName, HealthIndicator indicator) {
+        return decoratedIndicators.computeIfAbsent(beanName, key -> decorate(key, indicator));
+    }
+
+    private HealthIndicator decorate(String beanName, HealthIndicator indicator) {
+        HealthIndicator decorated = indicator;
+        if (isEnabled(SINGLE_FLIGHT_PREFIX, beanName, true)) {
+            decorated = new SingleFlightHealthIndicator(decorated);
+        }
+        // 并发汇总的成员取自注册表中装饰后的检查器，已各自熔断，汇总本身不再熔断；
+        // 熔断位于快照之内，依赖不可用时后台刷新同样被短路
+        if (isEnabled(CIRCUIT_BREAKER_PREFIX, beanName, true) && !(indicator instanceof ParallelHealthIndicator)) {
+            decorated = circuitBreaker(decorated);
+        }
+        if (isEnabled(SNAPSHOT_PREFIX, beanName, false)) {
+            decorated = snapshot(beanName, decorated,
+                environment.getProperty(SNAPSHOT_PREFIX + "interval-ms", Long.class, 10000L));
+        } else if (isFanOutSnapshot(beanName, indicator)) {
+            // 扇出类检查改为按较长间隔在后台执行，请求只读取快照
+            decorated = snapshot(beanName, decorated, environment.getProperty(FAN_OUT_SNAPSHOT_INTERVAL, Long.class));
+        }
+        return decorated;
+    }
+
+    /**
+     * 响应式健康检查器与阻塞的一样先单飞再熔断，快照仍只用于阻塞的健康检查器
+     */
+    private Object decorateReactive(String beanName, Object indicator) {
+        return ReactiveHealthRegistries.decorate(indicator, isEnabled(SINGLE_FLIGHT_PREFIX, beanName, true),
+            isEnabled(CIRCUIT_BREAKER_PREFIX, beanName, true) ? newCircuitBreaker() : null);
+    }
+
+    /**
+     * 依赖失败后按指数退避熔断
+     */
+    private HealthIndicator circuitBreaker(HealthIndicator indicator) {
+        return new CircuitBreakerHealthIndicator(indicator, newCircuitBreaker());
+    }
+
+    private CircuitBreaker newCircuitBreaker() {
+        Set<Status> failureStatuses = new LinkedHashSet<>();
+        for (String code : StringUtils.commaDelimitedListToStringArray(
+            environment.getProperty(CIRCUIT_BREAKER_PREFIX + "failure-statuses", "DOWN,TIMEOUT"))) {
+            failureStatuses.add(new Status(code.trim()));
+        }
+        return new CircuitBreaker(failureStatuses,
+            environment.getProperty(CIRCUIT_BREAKER_PREFIX + "failure-threshold", Integer.class, 3),
+            environment.getProperty(CIRCUIT_BREAKER_PREFIX + "initial-backoff-ms", Long.class, 1000L),
+            environment.getProperty(CIRCUIT_BREAKER_PREFIX + "max-backoff-ms", Long.class, 60000L),
+            environment.getProperty(CIRCUIT_BREAKER_PREFIX + "multiplier", Double.class, 2.0));
+    }
+
+    /**
+     * 后台刷新的快照，刷新间隔可按bean名称单独配置
+     */
+    private synchronized HealthIndicator snapshot(String beanName, HealthIndicator indicator, long defaultIntervalMs) {
+        long intervalMs = environment.getProperty(SNAPSHOT_PREFIX + "intervals." + beanName, Long.class,
+            defaultIntervalMs);
+        long staleFactor = environment.getProperty(SNAPSHOT_PREFIX + "stale-factor", Long.class, 3L);
+        if (scheduler == null) {
+            int threads = environment.getProperty(SNAPSHOT_PREFIX + "threads", Integer.class, 2);
+            scheduler = Executors.newScheduledThreadPool(threads, ConcurrentProbes.daemonThreadFactory("health-snapshot"));
+        }
+        SnapshotHealthIndicator snapshot = new SnapshotHealthIndicator(beanName, indicator, intervalMs,
+            intervalMs * staleFactor);
+        snapshot.start(scheduler);
+        snapshots.add(snapshot);
+        return snapshot;
+    }
+
+    /**
+     * 配置了 management.health.tiers.fan-out-snapshot-interval-ms 时，扇出等级的检查器使用快照
+     */
+    private boolean isFanOutSnapshot(String beanName, HealthIndicator indicator) {
+        if (environment.getProperty(FAN_OUT_SNAPSHOT_INTERVAL, Long.class, 0L) <= 0) {
+            return false;
+        }
+        Set<String> excludes = new HashSet<>(Arrays.asList(
+            StringUtils.commaDelimitedListToStringArray(environment.getProperty(SNAPSHOT_PREFIX + "exclude", ""))));
+        return !excludes.contains(beanName) && HealthCostTier.resolve(beanName, AopUtils.getTargetClass(indicator),
+            environment, HealthCostTier.SINGLE_ROUND_TRIP) == HealthCostTier.FAN_OUT;
+    }
+
+    private boolean isEnabled(String prefix, String beanName, boolean defaultEnabled) {
+        if (!environment.getProperty(prefix + "enabled", Boolean.class, defaultEnabled)) {
+            return false;
+        }
+        Set<String> excludes = new HashSet<>(Arrays.asList(
+            StringUtils.commaDelimitedListToStringArray(environment.getProperty(prefix + "exclude", ""))));
+        return !excludes.contains(beanName);
+    }
+
+    @Override
+    public synchronized void destroy() {
+        snapshots.forEach(SnapshotHealthIndicator::stop);
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+}
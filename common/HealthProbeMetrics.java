@@ -0,0 +1,167 @@
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.boot.actuate.health.Status;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 健康探测的Micrometer指标
+ * 每个依赖、每个探测目标发布三个指标，均带有 dependency 与 target 标签：
+ * health.probe.latency 探测耗时(Timer)，
+ * health.probe.outcome 探测结果计数(Counter，outcome标签为up/down)，
+ * health.probe.status 当前状态(Gauge，1为UP，0为DOWN等不健康状态，-1为UNKNOWN)
+ * 指标在探测时写入，抓取时只读取已有的值，不会触发探测；未绑定MeterRegistry时不做任何事
+ * 探测目标会变化的依赖(实例、服务提供者地址)需在目标离开时调用 {@link #retainTargets(Collection)}，避免指标无限增长
+ *
+ * @see io.micrometer.core.instrument.binder.MeterBinder
+ */
+public class HealthProbeMetrics {
+
+    /**
+     * 依赖只有一个探测目标时使用的target标签
+     */
+    public static final String DEFAULT_TARGET = "default";
+
+    private final String dependency;
+
+    private final Map<String, TargetMeters> targets = new ConcurrentHashMap<>();
+
+    private volatile MeterRegistry registry;
+
+    /**
+     * 创建指标
+     *
+     * @param dependency 依赖名称，作为dependency标签
+     */
+    public HealthProbeMetrics(String dependency) {
+        this.dependency = dependency;
+    }
+
+    /**
+     * 绑定MeterRegistry
+     *
+     * @param registry 注册表
+     */
+    public void bindTo(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * 记录默认目标的一次探测
+     *
+     * @param nanos  耗时，纳秒
+     * @param status 探测结果
+     */
+    public void record(long nanos, Status status) {
+        record(DEFAULT_TARGET, nanos, status);
+    }
+
+    /**
+     * 记录一次探测
+     *
+     * @param target 探测目标
+     * @param nanos  耗时，纳秒
+     * @param status 探测结果
+     */
+    public void record(String target, long nanos, Status status) {
+        MeterRegistry registry = this.registry;
+        if (registry == null) {
+            return;
+        }
+        TargetMeters meters = targets.computeIfAbsent(target, t -> new TargetMeters(registry, dependency, t));
+        meters.latency.record(nanos, TimeUnit.NANOSECONDS);
+        if (Status.UP.equals(status)) {
+            meters.up.increment();
+        } else {
+            meters.down.increment();
+        }
+        meters.status.set(toGaugeValue(status));
+    }
+
+    /**
+     * 只保留仍然存在的探测目标，其余目标的指标从MeterRegistry中移除
+     *
+     * @param liveTargets 仍然存在的探测目标
+     */
+    public void retainTargets(Collection<String> liveTargets) {
+        MeterRegistry registry = this.registry;
+        Set<String> live = liveTargets instanceof Set ? (Set<String>) liveTargets : new HashSet<>(liveTargets);
+        for (Iterator<Map.Entry<String, TargetMeters>> iterator = targets.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<String, TargetMeters> entry = iterator.next();
+            if (!live.contains(entry.getKey())) {
+                iterator.remove();
+                if (registry != null) {
+                    entry.getValue().remove(registry);
+                }
+            }
+        }
+    }
+
+    /**
+     * 移除一个探测目标的指标
+     *
+     * @param target 探测目标
+     */
+    public void remove(String target) {
+        TargetMeters meters = targets.remove(target);
+        MeterRegistry registry = this.registry;
+        if (meters != null && registry != null) {
+            meters.remove(registry);
+        }
+    }
+
+    private static int toGaugeValue(Status status) {
+        if (Status.UP.equals(status)) {
+            return 1;
+        }
+        return Status.UNKNOWN.equals(status) ? -1 : 0;
+    }
+
+    private static class TargetMeters {
+
+        private final Timer latency;
+
+        private final Counter up;
+
+        private final Counter down;
+
+        private final AtomicInteger status = new AtomicInteger(-1);
+
+        private final Gauge statusGauge;
+
+        private TargetMeters(MeterRegistry registry, String dependency, String target) {
+            this.latency = Timer.builder("health.probe.latency")
+                .description("Health probe latency")
+                .tags("dependency", dependency, "target", target)
+                .register(registry);
+            this.up = Counter.builder("health.probe.outcome")
+                .description("Health probe outcomes")
+                .tags("dependency", dependency, "target", target, "outcome", "up")
+                .register(registry);
+            this.down = Counter.builder("health.probe.outcome")
+                .description("Health probe outcomes")
+                .tags("dependency", dependency, "target", target, "outcome", "down")
+                .register(registry);
+            this.statusGauge = Gauge.builder("health.probe.status", status, AtomicInteger::get)
+                .description("Current health probe status, 1 up, 0 down, -1 unknown")
+                .tags("dependency", dependency, "target", target)
+                .register(registry);
+        }
+
+        private void remove(MeterRegistry registry) {
+            registry.remove(latency);
+            registry.remove(up);
+            registry.remove(down);
+            registry.remove(statusGauge);
+        }
+    }
+}
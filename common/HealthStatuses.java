@@ -0,0 +1,43 @@
+import org.springframework.boot.actuate.health.SimpleStatusAggregator;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.boot.actuate.health.StatusAggregator;
+
+/**
+ * 本库用到的扩展健康状态
+ * 需要在 management.endpoint.health.status.order 中配置其顺序才会参与汇总，
+ * 例如 DOWN,OUT_OF_SERVICE,TIMEOUT,FAILOVER,SUSPENDED,DEGRADED,UNKNOWN,UP
+ *
+ * @see Status
+ */
+public final class HealthStatuses {
+
+    /**
+     * 探测在截止时间内没有返回
+     */
+    public static final Status TIMEOUT = new Status("TIMEOUT", "Probe did not complete before the deadline");
+
+    /**
+     * 依赖可用但处于降级状态，例如连接池饱和
+     */
+    public static final Status DEGRADED = new Status("DEGRADED", "Dependency is reachable but degraded");
+
+    /**
+     * 主从切换进行中，例如redis哨兵正在故障转移
+     */
+    public static final Status FAILOVER = new Status("FAILOVER", "Failover in progress");
+
+    /**
+     * 与注册中心的会话已挂起但尚未过期，例如zookeeper选主期间，恢复后无需重建会话
+     */
+    public static final Status SUSPENDED = new Status("SUSPENDED", "Session suspended, may still recover");
+
+    /**
+     * 包含扩展状态的汇总器，顺序为 DOWN,OUT_OF_SERVICE,TIMEOUT,FAILOVER,SUSPENDED,DEGRADED,UNKNOWN,UP，
+     * 供内部汇总多个子结果时使用
+     */
+    public static final StatusAggregator AGGREGATOR = new SimpleStatusAggregator(Status.DOWN, Status.OUT_OF_SERVICE,
+        TIMEOUT, FAILOVER, SUSPENDED, DEGRADED, Status.UNKNOWN, Status.UP);
+
+    private HealthStatuses() {
+    }
+}
@@ -0,0 +1,185 @@
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.health.ReactiveHealthIndicator;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.EnvironmentAware;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.PropertyResolver;
+import org.springframework.util.StringUtils;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 按开销等级生成健康分组
+ * 读取每个健康检查器的 {@link HealthCostTier}，生成 management.endpoint.health.group.[分组].include，
+ * 默认 readiness 包含进程内与单次往返的检查，deep 包含全部，扇出类检查只在deep中执行；
+ * liveness 与等级无关，固定为 livenessState 与 ping(可通过 management.health.tiers.liveness-include 修改)，
+ * 依赖故障只会让实例摘流，不会触发重启
+ * 生成的配置以最低优先级加入环境，应用中显式配置的分组不受影响
+ * 分组与等级的对应关系可通过 management.health.tiers.groups.[分组]=等级列表 修改
+ *
+ * @see HealthCost
+ * @see DefaultHealthTierConfig
+ */
+public class HealthTierGroupsPostProcessor implements BeanFactoryPostProcessor, EnvironmentAware {
+
+    private static final String PREFIX = "management.health.tiers.";
+
+    private static final String GROUP_PREFIX = "management.endpoint.health.group.";
+
+    private static final String PROPERTY_SOURCE_NAME = "healthTierGroups";
+
+    private static final String PARALLEL_PREFIX = "management.health.parallel.";
+
+    /**
+     * actuator自带的进程内检查，bean上没有 {@link HealthCost}
+     */
+    private static final Set<String> IN_MEMORY_BUILTINS = new HashSet<>(Arrays.asList(
+        "ping", "diskSpace", "readinessState"));
+
+    /**
+     * 只属于liveness的检查，不参与按等级分组
+     */
+    private static final String LIVENESS_STATE = "livenessState";
+
+    private Environment environment;
+
+    @Override
+    public void setEnvironment(Environment environment) {
+        this.environment = environment;
+    }
+
+    @Override
+    public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) {
+        if (!environment.getProperty(PREFIX + "enabled", Boolean.class, true)
+            || !(environment instanceof ConfigurableEnvironment)) {
+            return;
+        }
+        Map<String, HealthCostTier> tiers = resolveTiers(beanFactory, environment);
+        HealthCostTier parallelTier = ParallelHealthIndicator.getTier(environment);
+        for (String beanName : beanFactory.getBeanNamesForType(ParallelHealthIndicator.class, true, false)) {
+            absorbParallelMembers(ParallelHealthIndicator.getName(beanName), parallelTier, tiers);
+        }
+
+        Map<String, Object> properties = new HashMap<>();
+        Map<String, Set<HealthCostTier>> groups = getGroups();
+        if (!groups.containsKey("liveness")) {
+            // liveness失败会导致重启，只包含进程自身的状态，不随开销等级变化，外部依赖(包括zookeeper会话)只进入readiness
+            Set<String> members = new LinkedHashSet<>();
+            for (String name : StringUtils.commaDelimitedListToStringArray(
+                environment.getProperty(PREFIX + "liveness-include", "livenessState,ping"))) {
+                if (tiers.containsKey(name.trim()) || LIVENESS_STATE.equals(name.trim())) {
+                    members.add(name.trim());
+                }
+            }
+            if (!members.isEmpty()) {
+                properties.put(GROUP_PREFIX + "liveness.include", StringUtils.collectionToCommaDelimitedString(members));
+            }
+        }
+        groups.forEach((group, groupTiers) -> {
+            Set<String> members = new LinkedHashSet<>();
+            tiers.forEach((name, tier) -> {
+                if (groupTiers.contains(tier)) {
+                    members.add(name);
+                }
+            });
+            if (!members.isEmpty()) {
+                properties.put(GROUP_PREFIX + group + ".include", StringUtils.collectionToCommaDelimitedString(members));
+            }
+        });
+        ((ConfigurableEnvironment) environment).getPropertySources()
+            .addLast(new MapPropertySource(PROPERTY_SOURCE_NAME, properties));
+    }
+
+    /**
+     * 解析容器中每个健康检查器的等级，key为去掉后缀的健康检查名称，不含只属于liveness的检查
+     *
+     * @param beanFactory bean工厂
+     * @param resolver    配置
+     * @return 健康检查名称到等级
+     */
+    static Map<String, HealthCostTier> resolveTiers(ListableBeanFactory beanFactory, PropertyResolver resolver) {
+        HealthCostTier defaultTier = getDefaultTier(resolver);
+        Map<String, HealthCostTier> tiers = new LinkedHashMap<>();
+        Set<String> beanNames = new LinkedHashSet<>();
+        beanNames.addAll(Arrays.asList(beanFactory.getBeanNamesForType(HealthIndicator.class, true, false)));
+        beanNames.addAll(Arrays.asList(beanFactory.getBeanNamesForType(ReactiveHealthIndicator.class, true, false)));
+        for (String beanName : beanNames) {
+            String name = ParallelHealthIndicator.getName(beanName);
+            if (!LIVENESS_STATE.equals(name)) {
+                tiers.put(name, IN_MEMORY_BUILTINS.contains(name) ? HealthCostTier.IN_MEMORY
+                    : HealthCostTier.resolve(beanName, beanFactory.getType(beanName, false), resolver, defaultTier));
+            }
+        }
+        return tiers;
+    }
+
+    /**
+     * 没有声明 {@link HealthCost} 的检查器的等级，management.health.tiers.default，默认single-round-trip
+     *
+     * @param resolver 配置
+     * @return {@link HealthCostTier}
+     */
+    static HealthCostTier getDefaultTier(PropertyResolver resolver) {
+        return HealthCostTier.parse(resolver.getProperty(PREFIX + "default", "single-round-trip"));
+    }
+
+    /**
+     * 并发汇总会把成员移出健康检查注册表，分组改为包含汇总本身，其等级为汇总的等级；
+     * 汇总只吸收同一等级的成员，其他等级的检查仍按各自的等级分组，不会因为一个扇出成员让整个汇总退出readiness
+     */
+    private void absorbParallelMembers(String parallelName, HealthCostTier parallelTier,
+                                       Map<String, HealthCostTier> tiers) {
+        Set<String> includes = new HashSet<>();
+        for (String include : StringUtils.commaDelimitedListToStringArray(
+            environment.getProperty(PARALLEL_PREFIX + "include", ""))) {
+            includes.add(ParallelHealthIndicator.getName(include.trim()));
+        }
+        boolean absorbed = false;
+        for (Iterator<Map.Entry<String, HealthCostTier>> iterator = tiers.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<String, HealthCostTier> entry = iterator.next();
+            String name = entry.getKey();
+            if (!name.equals(parallelName) && entry.getValue() == parallelTier
+                && ParallelHealthIndicator.isMember(name, includes)) {
+                iterator.remove();
+                absorbed = true;
+            }
+        }
+        if (absorbed) {
+            tiers.put(parallelName, parallelTier);
+        }
+    }
+
+    private Map<String, Set<HealthCostTier>> getGroups() {
+        Map<String, String> configured = new LinkedHashMap<>();
+        configured.put("readiness", "in-memory,single-round-trip");
+        configured.put("deep", "in-memory,single-round-trip,fan-out");
+        configured.putAll(Binder.get(environment)
+            .bind(PREFIX + "groups", Bindable.mapOf(String.class, String.class))
+            .orElseGet(LinkedHashMap::new));
+        Map<String, Set<HealthCostTier>> groups = new LinkedHashMap<>();
+        configured.forEach((group, value) -> {
+            Set<HealthCostTier> groupTiers = EnumSet.noneOf(HealthCostTier.class);
+            for (String tier : StringUtils.commaDelimitedListToStringArray(value)) {
+                if (StringUtils.hasText(tier)) {
+                    groupTiers.add(HealthCostTier.parse(tier));
+                }
+            }
+            groups.put(group, groupTiers);
+        });
+        return groups;
+    }
+}
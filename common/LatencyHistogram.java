@@ -0,0 +1,176 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 探测耗时的滚动直方图
+ * 以纳秒记录耗时，桶按2的幂次划分且每个幂次再细分4个子桶(误差约19%)，覆盖1微秒到约18分钟，
+ * 时间窗口由若干个环形时间片组成，过期的时间片在下次写入时整体替换为新的时间片，
+ * 替换与写入并发时不会清掉新时间片内已记录的耗时；
+ * 记录过程无锁，只在时间片轮转时分配对象，读取时汇总窗口内的时间片计算分位数
+ *
+ * @see #record(long)
+ * @see #toDetails()
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 2;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * 第一个幂次桶从 2^10 纳秒(约1微秒)开始，更小的耗时都记入0号桶
+     */
+    private static final int MIN_EXPONENT = 10;
+
+    private static final int MAX_EXPONENT = 40;
+
+    private static final int BUCKET_COUNT = 1 + (MAX_EXPONENT - MIN_EXPONENT + 1) * SUB_BUCKETS;
+
+    private static final int SLICE_COUNT = 6;
+
+    private static final long DEFAULT_WINDOW_MS = TimeUnit.SECONDS.toMillis(60);
+
+    private final AtomicReferenceArray<Slice> slices = new AtomicReferenceArray<>(SLICE_COUNT);
+
+    private volatile long sliceMs;
+
+    public LatencyHistogram() {
+        this(DEFAULT_WINDOW_MS);
+    }
+
+    /**
+     * 创建直方图
+     *
+     * @param windowMs 统计窗口，毫秒
+     */
+    public LatencyHistogram(long windowMs) {
+        for (int i = 0; i < SLICE_COUNT; i++) {
+            slices.set(i, new Slice(-1));
+        }
+        setWindowMs(windowMs);
+    }
+
+    /**
+     * 调整统计窗口，已记录的时间片会在下次写入时按新的窗口重新计算
+     *
+     * @param windowMs 统计窗口，毫秒
+     */
+    public void setWindowMs(long windowMs) {
+        this.sliceMs = Math.max(1L, windowMs / SLICE_COUNT);
+    }
+
+    public long getWindowMs() {
+        return sliceMs * SLICE_COUNT;
+    }
+
+    /**
+     * 记录一次耗时
+     *
+     * @param nanos 耗时，纳秒
+     */
+    public void record(long nanos) {
+        long epoch = System.currentTimeMillis() / sliceMs;
+        int index = (int) (epoch % SLICE_COUNT);
+        Slice slice = slices.get(index);
+        if (slice.epoch != epoch) {
+            // 过期的时间片整体替换，替换失败说明其他线程已换上新的时间片
+            Slice fresh = new Slice(epoch);
+            slice = slices.compareAndSet(index, slice, fresh) ? fresh : slices.get(index);
+        }
+        slice.counts.incrementAndGet(bucketOf(nanos));
+        long max;
+        while (nanos > (max = slice.max.get()) && !slice.max.compareAndSet(max, nanos)) {
+            // 自旋直到写入更大的值
+        }
+    }
+
+    /**
+     * 汇总窗口内的分位数，耗时单位为毫秒并保留到微秒
+     *
+     * @return count、p50Ms、p90Ms、p99Ms、maxMs 与 windowSeconds
+     */
+    public Map<String, Object> toDetails() {
+        long epoch = System.currentTimeMillis() / sliceMs;
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        long max = 0;
+        for (int index = 0; index < SLICE_COUNT; index++) {
+            Slice slice = slices.get(index);
+            long sliceEpoch = slice.epoch;
+            if (epoch - sliceEpoch >= SLICE_COUNT || sliceEpoch > epoch) {
+                continue;
+            }
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                long count = slice.counts.get(i);
+                counts[i] += count;
+                total += count;
+            }
+            max = Math.max(max, slice.max.get());
+        }
+        Map<String, Object> details = new LinkedHashMap<>();
+        details.put("count", total);
+        details.put("p50Ms", toMillis(Math.min(max, percentile(counts, total, 0.50))));
+        details.put("p90Ms", toMillis(Math.min(max, percentile(counts, total, 0.90))));
+        details.put("p99Ms", toMillis(Math.min(max, percentile(counts, total, 0.99))));
+        details.put("maxMs", toMillis(max));
+        details.put("windowSeconds", TimeUnit.MILLISECONDS.toSeconds(getWindowMs()));
+        return details;
+    }
+
+    private static long percentile(long[] counts, long total, double quantile) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * quantile);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return upperBoundOf(i);
+            }
+        }
+        return upperBoundOf(BUCKET_COUNT - 1);
+    }
+
+    static int bucketOf(long nanos) {
+        if (nanos < (1L << MIN_EXPONENT)) {
+            return 0;
+        }
+        int exponent = Math.min(63 - Long.numberOfLeadingZeros(nanos), MAX_EXPONENT);
+        int subBucket = (int) ((nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+        if (exponent == MAX_EXPONENT && nanos >= (1L << (MAX_EXPONENT + 1))) {
+            subBucket = SUB_BUCKETS - 1;
+        }
+        return 1 + (exponent - MIN_EXPONENT) * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBoundOf(int bucket) {
+        if (bucket == 0) {
+            return (1L << MIN_EXPONENT) - 1;
+        }
+        int exponent = MIN_EXPONENT + (bucket - 1) / SUB_BUCKETS;
+        int subBucket = (bucket - 1) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    private static double toMillis(long nanos) {
+        return Math.round(nanos / 1000.0) / 1000.0;
+    }
+
+    private static class Slice {
+
+        private final long epoch;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+        private final AtomicLong max = new AtomicLong();
+
+        private Slice(long epoch) {
+            this.epoch = epoch;
+        }
+    }
+}
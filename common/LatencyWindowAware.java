@@ -0,0 +1,16 @@
+/**
+ * 持有耗时直方图的健康检查器
+ * 统计窗口统一由 management.health.latency.window-seconds 配置，默认60秒
+ *
+ * @see LatencyHistogram
+ * @see LatencyWindowPostProcessor
+ */
+public interface LatencyWindowAware {
+
+    /**
+     * 设置耗时分位数的统计窗口
+     *
+     * @param windowMs 统计窗口，毫秒
+     */
+    void setLatencyWindowMs(long windowMs);
+}
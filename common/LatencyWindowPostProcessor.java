@@ -0,0 +1,44 @@
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.EnvironmentAware;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.PropertyResolver;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 为 {@link LatencyWindowAware} 的健康检查器设置耗时统计窗口
+ * 各个Default*Config通过@Import引入，重复引入只注册一次
+ *
+ * @see LatencyWindowAware
+ */
+public class LatencyWindowPostProcessor implements BeanPostProcessor, EnvironmentAware {
+
+    private static final String WINDOW_SECONDS = "management.health.latency.window-seconds";
+
+    private static final long DEFAULT_WINDOW_SECONDS = 60L;
+
+    private Environment environment;
+
+    @Override
+    public void setEnvironment(Environment environment) {
+        this.environment = environment;
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) {
+        if (bean instanceof LatencyWindowAware) {
+            ((LatencyWindowAware) bean).setLatencyWindowMs(getWindowMs(environment));
+        }
+        return bean;
+    }
+
+    /**
+     * 读取配置的统计窗口，用于不经过容器创建的检查器
+     *
+     * @param resolver 配置
+     * @return 统计窗口，毫秒
+     */
+    public static long getWindowMs(PropertyResolver resolver) {
+        return TimeUnit.SECONDS.toMillis(resolver.getProperty(WINDOW_SECONDS, Long.class, DEFAULT_WINDOW_SECONDS));
+    }
+}
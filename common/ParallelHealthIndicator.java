@@ -0,0 +1,205 @@
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanNameAware;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthContributor;
+import org.springframework.boot.actuate.health.HealthContributorRegistry;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.health.NamedContributor;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.PropertyResolver;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 并发汇总的健康检查器
+ * 同时启动全部成员健康检查(JDK 21+使用虚拟线程，否则使用有界线程池)，并对整个响应施加一个截止时间，
+ * 截止时仍未返回的成员记为UNKNOWN，附带TIMEOUT错误与已耗时，整体耗时约等于最慢的成员而不是全部之和
+ * 成员为actuator健康检查注册表中其他的 {@link HealthIndicator}(已经过装饰器)，可通过bean名称指定范围，
+ * 成员会从注册表中移除，只在汇总中执行一次，/actuator/health 不会再逐个执行它们；
+ * 没有注册表时成员取容器中其他的健康检查bean；
+ * 汇总只包含 management.health.parallel.tier 等级(默认single-round-trip)的成员，其他等级的检查留在注册表中按各自的等级分组，
+ * 指定了其他等级的成员时记录警告
+ *
+ * @see DefaultParallelHealthConfig
+ * @see ConcurrentProbes
+ */
+@Slf4j
+@HealthCost(HealthCostTier.FAN_OUT)
+public class ParallelHealthIndicator implements HealthIndicator, ApplicationContextAware, BeanNameAware,
+    SmartInitializingSingleton, DisposableBean {
+
+    private static final String[] NAME_SUFFIXES = {"healthindicator", "healthcontributor"};
+
+    private static final String TIER = "management.health.parallel.tier";
+
+    /**
+     * actuator自带的进程自身状态，未指定成员时不归入汇总，保留给liveness/readiness分组
+     */
+    private static final Set<String> LOCAL_CONTRIBUTORS = new HashSet<>(Arrays.asList(
+        "ping", "diskSpace", "livenessState", "readinessState"));
+
+    private final Set<String> includes;
+
+    private final long deadlineMs;
+
+    private final ExecutorService executor;
+
+    private ApplicationContext applicationContext;
+
+    private String beanName;
+
+    private volatile Map<String, HealthIndicator> members = Collections.emptyMap();
+
+    /**
+     * 创建并发汇总的健康检查器
+     *
+     * @param includes    成员的bean名称，为空时包含其他全部健康检查器
+     * @param deadlineMs  整个响应的截止时间，毫秒
+     * @param concurrency 不支持虚拟线程时的并发上限
+     */
+    public ParallelHealthIndicator(Set<String> includes, long deadlineMs, int concurrency) {
+        this.includes = new LinkedHashSet<>();
+        includes.forEach(include -> this.includes.add(getName(include)));
+        this.deadlineMs = deadlineMs;
+        this.executor = ConcurrentProbes.newVirtualOrBoundedExecutor("health-parallel", concurrency);
+    }
+
+    @Override
+    public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
+        this.applicationContext = applicationContext;
+    }
+
+    @Override
+    public void setBeanName(String beanName) {
+        this.beanName = beanName;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        String ownName = getName(beanName);
+        Environment environment = applicationContext.getEnvironment();
+        HealthCostTier tier = getTier(environment);
+        Map<String, HealthCostTier> tiers = HealthTierGroupsPostProcessor.resolveTiers(applicationContext, environment);
+        HealthCostTier defaultTier = HealthTierGroupsPostProcessor.getDefaultTier(environment);
+        Map<String, HealthIndicator> members = new LinkedHashMap<>();
+        HealthContributorRegistry registry = applicationContext.getBeanProvider(HealthContributorRegistry.class)
+            .getIfAvailable();
+        if (registry != null) {
+            for (NamedContributor<HealthContributor> contributor : registry) {
+                String name = contributor.getName();
+                if (!name.equals(ownName) && contributor.getContributor() instanceof HealthIndicator
+                    && isIncluded(name, tiers.getOrDefault(name, defaultTier), tier)) {
+                    members.put(name, (HealthIndicator) contributor.getContributor());
+                }
+            }
+            members.keySet().forEach(registry::unregisterContributor);
+            ReactiveHealthRegistries.unregister(applicationContext, members.keySet());
+        } else {
+            applicationContext.getBeansOfType(HealthIndicator.class).forEach((name, indicator) -> {
+                if (indicator != this && !(indicator instanceof ParallelHealthIndicator)
+                    && isIncluded(getName(name), tiers.getOrDefault(getName(name), defaultTier), tier)) {
+                    members.put(getName(name), indicator);
+                }
+            });
+        }
+        this.members = Collections.unmodifiableMap(members);
+    }
+
+    private boolean isIncluded(String name, HealthCostTier memberTier, HealthCostTier tier) {
+        if (!isMember(name, includes)) {
+            return false;
+        }
+        if (memberTier != tier) {
+            if (includes.contains(name)) {
+                log.warn("Health indicator {} is {} and stays out of the {} parallel composite", name, memberTier,
+                    tier);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 汇总的等级，management.health.parallel.tier，默认single-round-trip
+     *
+     * @param resolver 配置
+     * @return {@link HealthCostTier}
+     */
+    static HealthCostTier getTier(PropertyResolver resolver) {
+        return HealthCostTier.parse(resolver.getProperty(TIER, "single-round-trip"));
+    }
+
+    /**
+     * 是否为汇总的成员：指定了成员时按名称匹配，否则为进程自身状态以外的全部检查
+     *
+     * @param name     健康检查名称
+     * @param includes 指定的成员名称
+     * @return 是否为成员
+     */
+    static boolean isMember(String name, Set<String> includes) {
+        return includes.isEmpty() ? !LOCAL_CONTRIBUTORS.contains(name) : includes.contains(name);
+    }
+
+    @Override
+    public Health health() {
+        Map<String, HealthIndicator> members = this.members;
+        Map<String, Callable<Health>> tasks = new LinkedHashMap<>(members.size() * 2);
+        members.forEach((name, indicator) -> tasks.put(name, indicator::health));
+
+        Map<String, Health> healths = new LinkedHashMap<>(members.size() * 2);
+        Set<Status> statuses = new LinkedHashSet<>();
+        ConcurrentProbes.invokeAll(executor, tasks, deadlineMs).forEach((name, probeResult) -> {
+            Health health;
+            if (probeResult.isTimedOut()) {
+                health = Health.unknown()
+                    .withDetail("error", HealthStatuses.TIMEOUT.getCode())
+                    .withDetail("elapsedMs", probeResult.getElapsedMs())
+                    .build();
+            } else if (probeResult.isSuccess()) {
+                health = probeResult.getValue();
+            } else {
+                health = Health.down().withException(probeResult.getError())
+                    .withDetail("elapsedMs", probeResult.getElapsedMs())
+                    .build();
+            }
+            healths.put(name, health);
+            statuses.add(health.getStatus());
+        });
+        return Health.status(HealthStatuses.AGGREGATOR.getAggregateStatus(statuses))
+            .withDetails(healths)
+            .build();
+    }
+
+    /**
+     * 与actuator一致，去掉bean名称的HealthIndicator/HealthContributor后缀
+     */
+    static String getName(String beanName) {
+        for (String suffix : NAME_SUFFIXES) {
+            int index = beanName.toLowerCase(Locale.ENGLISH).indexOf(suffix);
+            if (index > 0) {
+                return beanName.substring(0, index);
+            }
+        }
+        return beanName;
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
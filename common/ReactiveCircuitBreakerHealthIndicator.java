@@ -0,0 +1,42 @@
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.ReactiveHealthIndicator;
+import reactor.core.publisher.Mono;
+
+/**
+ * 响应式的熔断健康检查器
+ * 与 {@link CircuitBreakerHealthIndicator} 使用同一个状态机，熔断期间直接返回最近一次的失败结果，不再订阅被包装的检查器；
+ * 半开试探的订阅被取消时放弃本次试探，下一次调用重新试探
+ *
+ * @see CircuitBreaker
+ * @see HealthIndicatorDecoratingPostProcessor
+ */
+public class ReactiveCircuitBreakerHealthIndicator implements ReactiveHealthIndicator {
+
+    private final ReactiveHealthIndicator delegate;
+
+    private final CircuitBreaker breaker;
+
+    ReactiveCircuitBreakerHealthIndicator(ReactiveHealthIndicator delegate, CircuitBreaker breaker) {
+        this.delegate = delegate;
+        this.breaker = breaker;
+    }
+
+    @Override
+    public Mono<Health> health() {
+        return Mono.defer(() -> {
+            CircuitBreaker.State permit = breaker.acquire();
+            if (permit == CircuitBreaker.State.OPEN) {
+                return Mono.just(breaker.shortCircuit());
+            }
+            boolean trial = permit == CircuitBreaker.State.HALF_OPEN;
+            return Mono.defer(delegate::health)
+                .onErrorResume(e -> Mono.just(Health.down().withException(e).build()))
+                .doOnNext(health -> breaker.record(health, trial))
+                .doFinally(signal -> {
+                    if (trial) {
+                        breaker.abandonTrial();
+                    }
+                });
+        });
+    }
+}
@@ -0,0 +1,138 @@
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.health.HealthIndicatorReactiveAdapter;
+import org.springframework.boot.actuate.health.ReactiveHealthContributor;
+import org.springframework.boot.actuate.health.ReactiveHealthContributorRegistry;
+import org.springframework.boot.actuate.health.ReactiveHealthIndicator;
+import org.springframework.context.ApplicationContext;
+import org.springframework.util.ClassUtils;
+
+import java.util.Collection;
+
+/**
+ * 响应式健康检查注册表与响应式健康检查器的操作
+ * 只有存在reactor时才会加载响应式的类，没有reactor的应用调用这里的方法不会出错
+ *
+ * @see HealthIndicatorDecoratingPostProcessor
+ * @see ParallelHealthIndicator
+ */
+final class ReactiveHealthRegistries {
+
+    private static final boolean REACTOR_PRESENT = ClassUtils.isPresent("reactor.core.publisher.Mono",
+        ReactiveHealthRegistries.class.getClassLoader());
+
+    private ReactiveHealthRegistries() {
+    }
+
+    /**
+     * 是否为响应式健康检查注册表
+     *
+     * @param bean bean
+     * @return 是否为注册表
+     */
+    static boolean isRegistry(Object bean) {
+        return REACTOR_PRESENT && Support.isRegistry(bean);
+    }
+
+    /**
+     * 是否为响应式健康检查器
+     *
+     * @param bean bean
+     * @return 是否为响应式健康检查器
+     */
+    static boolean isIndicator(Object bean) {
+        return REACTOR_PRESENT && Support.isIndicator(bean);
+    }
+
+    /**
+     * 装饰响应式健康检查器
+     *
+     * @param indicator    响应式健康检查器
+     * @param singleFlight 是否单飞
+     * @param breaker      熔断状态，不熔断时为null
+     * @return 装饰后的检查器，不需要装饰时为原检查器
+     */
+    static Object decorate(Object indicator, boolean singleFlight, CircuitBreaker breaker) {
+        return Support.decorate(indicator, singleFlight, breaker);
+    }
+
+    /**
+     * 将注册表中的响应式健康检查器替换为装饰后的检查器，成员已被替换或移除时忽略
+     *
+     * @param registry  响应式健康检查注册表
+     * @param name      成员名称
+     * @param indicator 原响应式健康检查器
+     * @param decorated 装饰后的检查器
+     */
+    static void replace(Object registry, String name, Object indicator, Object decorated) {
+        Support.replace(registry, name, indicator, decorated);
+    }
+
+    /**
+     * 将注册表中由阻塞健康检查器适配而来的成员替换为指定的检查器
+     *
+     * @param registry  响应式健康检查注册表
+     * @param name      成员名称
+     * @param indicator 替换后的健康检查器
+     */
+    static void replaceAdapted(Object registry, String name, HealthIndicator indicator) {
+        Support.replaceAdapted(registry, name, indicator);
+    }
+
+    /**
+     * 从容器中的响应式健康检查注册表移除成员，没有该注册表时忽略
+     *
+     * @param applicationContext 容器
+     * @param names              成员名称
+     */
+    static void unregister(ApplicationContext applicationContext, Collection<String> names) {
+        if (REACTOR_PRESENT) {
+            Support.unregister(applicationContext, names);
+        }
+    }
+
+    private static class Support {
+
+        static boolean isRegistry(Object bean) {
+            return bean instanceof ReactiveHealthContributorRegistry;
+        }
+
+        static boolean isIndicator(Object bean) {
+            return bean instanceof ReactiveHealthIndicator;
+        }
+
+        static Object decorate(Object indicator, boolean singleFlight, CircuitBreaker breaker) {
+            ReactiveHealthIndicator decorated = (ReactiveHealthIndicator) indicator;
+            if (singleFlight) {
+                decorated = new ReactiveSingleFlightHealthIndicator(decorated);
+            }
+            if (breaker != null) {
+                decorated = new ReactiveCircuitBreakerHealthIndicator(decorated, breaker);
+            }
+            return decorated;
+        }
+
+        static void replace(Object registry, String name, Object indicator, Object decorated) {
+            ReactiveHealthContributorRegistry reactiveRegistry = (ReactiveHealthContributorRegistry) registry;
+            if (reactiveRegistry.getContributor(name) == indicator) {
+                reactiveRegistry.unregisterContributor(name);
+                reactiveRegistry.registerContributor(name, (ReactiveHealthIndicator) decorated);
+            }
+        }
+
+        static void replaceAdapted(Object registry, String name, HealthIndicator indicator) {
+            ReactiveHealthContributorRegistry reactiveRegistry = (ReactiveHealthContributorRegistry) registry;
+            if (reactiveRegistry.getContributor(name) instanceof HealthIndicatorReactiveAdapter) {
+                reactiveRegistry.unregisterContributor(name);
+                reactiveRegistry.registerContributor(name, ReactiveHealthContributor.adapt(indicator));
+            }
+        }
+
+        static void unregister(ApplicationContext applicationContext, Collection<String> names) {
+            ReactiveHealthContributorRegistry registry = applicationContext
+                .getBeanProvider(ReactiveHealthContributorRegistry.class).getIfAvailable();
+            if (registry != null) {
+                names.forEach(registry::unregisterContributor);
+            }
+        }
+    }
+}
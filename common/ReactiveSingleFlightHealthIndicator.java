@@ -0,0 +1,42 @@
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.ReactiveHealthIndicator;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 响应式的单飞健康检查器
+ * 同一时刻对同一依赖最多只有一个正在执行的健康检查，并发订阅的调用方共享同一个缓存的 Mono，
+ * 检查结束后下一次订阅重新发起探测；单个调用方取消订阅不会取消共享的检查
+ *
+ * @see SingleFlightHealthIndicator
+ * @see HealthIndicatorDecoratingPostProcessor
+ */
+public class ReactiveSingleFlightHealthIndicator implements ReactiveHealthIndicator {
+
+    private final ReactiveHealthIndicator delegate;
+
+    private final AtomicReference<Mono<Health>> inFlight = new AtomicReference<>();
+
+    public ReactiveSingleFlightHealthIndicator(ReactiveHealthIndicator delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Mono<Health> health() {
+        return Mono.defer(() -> {
+            AtomicReference<Mono<Health>> self = new AtomicReference<>();
+            Mono<Health> flight = Mono.defer(delegate::health)
+                .doFinally(signal -> inFlight.compareAndSet(self.get(), null))
+                .cache();
+            self.set(flight);
+            while (!inFlight.compareAndSet(null, flight)) {
+                Mono<Health> current = inFlight.get();
+                if (current != null) {
+                    return current;
+                }
+            }
+            return flight;
+        });
+    }
+}
@@ -0,0 +1,60 @@
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 单飞健康检查器
+ * 同一时刻对同一依赖最多只有一个正在执行的健康检查，
+ * 并发到达的调用方加入正在执行的检查并共享其结果，而不是各自再发起一次探测
+ *
+ * @see HealthIndicatorDecoratingPostProcessor
+ */
+public class SingleFlightHealthIndicator implements HealthIndicator {
+
+    private final HealthIndicator delegate;
+
+    private final AtomicReference<CompletableFuture<Health>> inFlight = new AtomicReference<>();
+
+    public SingleFlightHealthIndicator(HealthIndicator delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Health health() {
+        CompletableFuture<Health> flight = new CompletableFuture<>();
+        while (!inFlight.compareAndSet(null, flight)) {
+            CompletableFuture<Health> current = inFlight.get();
+            if (current != null) {
+                return join(current);
+            }
+        }
+        try {
+            Health health = delegate.health();
+            flight.complete(health);
+            return health;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.compareAndSet(flight, null);
+        }
+    }
+
+    private static Health join(CompletableFuture<Health> flight) {
+        try {
+            return flight.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 快照健康检查器
+ * 由后台线程按固定间隔执行被包装的健康检查，并将最近一次结果保存在原子引用中，
+ * 健康检查直接返回快照，不阻塞请求线程，结果中附带快照的年龄以及是否已过期
+ *
+ * @see HealthIndicatorDecoratingPostProcessor
+ */
+@Slf4j
+public class SnapshotHealthIndicator implements HealthIndicator {
+
+    private final String name;
+
+    private final HealthIndicator delegate;
+
+    private final long intervalMs;
+
+    private final long staleAfterMs;
+
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+
+    private volatile ScheduledFuture<?> future;
+
+    /**
+     * 创建快照健康检查器
+     *
+     * @param name         名称，用于日志
+     * @param delegate     被包装的健康检查器
+     * @param intervalMs   刷新间隔，毫秒
+     * @param staleAfterMs 快照超过该年龄视为过期，毫秒
+     */
+    public SnapshotHealthIndicator(String name, HealthIndicator delegate, long intervalMs, long staleAfterMs) {
+        this.name = name;
+        this.delegate = delegate;
+        this.intervalMs = intervalMs;
+        this.staleAfterMs = staleAfterMs;
+    }
+
+    /**
+     * 开始后台刷新，首次刷新立即执行
+     *
+     * @param scheduler 执行刷新的调度线程池
+     */
+    public void start(ScheduledExecutorService scheduler) {
+        this.future = scheduler.scheduleWithFixedDelay(this::refresh, 0, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止后台刷新
+     */
+    public void stop() {
+        ScheduledFuture<?> future = this.future;
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    private void refresh() {
+        Health health;
+        try {
+            health = delegate.health();
+        } catch (Throwable t) {
+            log.warn("Health snapshot refresh of {} failed", name, t);
+            health = Health.down().withException(t).build();
+        }
+        snapshot.set(new Snapshot(health, System.currentTimeMillis()));
+    }
+
+    @Override
+    public Health health() {
+        Snapshot current = snapshot.get();
+        if (current == null) {
+            return Health.unknown().withDetail("snapshot", "initializing").build();
+        }
+        long ageMs = System.currentTimeMillis() - current.timestamp;
+        return Health.status(current.health.getStatus())
+            .withDetails(current.health.getDetails())
+            .withDetail("ageMs", ageMs)
+            .withDetail("stale", ageMs > staleAfterMs)
+            .build();
+    }
+
+    private static class Snapshot {
+
+        private final Health health;
+
+        private final long timestamp;
+
+        private Snapshot(Health health, long timestamp) {
+            this.health = health;
+            this.timestamp = timestamp;
+        }
+    }
+}
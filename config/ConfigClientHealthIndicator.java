@@ -1,55 +1,249 @@
-
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.actuate.health.Health;
-import org.springframework.boot.actuate.health.HealthIndicator;
-import org.springframework.boot.actuate.health.Status;
-import org.springframework.cloud.config.client.ConfigClientProperties;
-import org.springframework.cloud.config.environment.Environment;
-import org.springframework.http.*;
-import org.springframework.stereotype.Component;
-import org.springframework.web.client.RestTemplate;
-
-/**
- * 配置客户端健康指示器
- *
- * @author xuhui
- * @date 2022/03/15
- */
-@Component
-public class ConfigClientHealthIndicator implements HealthIndicator {
-
-  @Autowired
-  ConfigClientProperties properties;
-
-  /**
-   * 健康
-   *
-   * @return {@link Health}
-   */@Override
-  public Health health() {
-    // 健康检查的逻辑
-    long startTime = System.currentTimeMillis();
-    Status  status =getStatus();
-    long endTime = System.currentTimeMillis();
-
-    return new Health.Builder(status).withDetail("timeMs", endTime - startTime).build();
-  }
-
-  /**
-   * 获得地位
-   *
-   * @return {@link Status}
-   */private Status getStatus() {
-    RestTemplate restTemplate = new RestTemplate();
-    String path = "/{name}/{profile}";
-    Object[] args = new String[] { "base", "dev" };
-    HttpHeaders headers = new HttpHeaders();
-    final HttpEntity<Void> entity = new HttpEntity<>((Void) null, headers);
-    ResponseEntity<Environment>  response = restTemplate.exchange(properties.getUri()[0] + path, HttpMethod.GET, entity,
-            Environment.class, args);
-    return response.getStatusCode()== HttpStatus.OK?Status.UP : Status.DOWN;
-  }
-
-
-
-}
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.http.client.HttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.cloud.config.client.ConfigClientProperties;
+import org.springframework.http.*;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StringUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 配置客户端健康指示器
+ * 共享一个带连接池与超时的RestTemplate，同时探测配置的全部配置中心地址，
+ * 使用客户端真实的应用名、profile与label，并带上 If-None-Match，配置未变化时服务端只返回304，
+ * 首选地址不可用但其他地址可用时为DEGRADED
+ *
+ * @author xuhui
+ * @date 2022/03/15
+ */
+@Component
+@HealthCost(HealthCostTier.FAN_OUT)
+public class ConfigClientHealthIndicator implements HealthIndicator, MeterBinder, DisposableBean,
+    LatencyWindowAware {
+
+  private static final boolean HTTP_COMPONENTS_PRESENT = ClassUtils.isPresent(
+      "org.apache.http.impl.client.HttpClientBuilder", ConfigClientHealthIndicator.class.getClassLoader());
+
+  @Autowired
+  ConfigClientProperties properties;
+
+  /**
+   * 连接超时，毫秒
+   */
+  @Value("${spring.cloud.config.health.connect-timeout-ms:1000}")
+  private int connectTimeoutMs = 1000;
+
+  /**
+   * 读取超时，毫秒
+   */
+  @Value("${spring.cloud.config.health.read-timeout-ms:2000}")
+  private int readTimeoutMs = 2000;
+
+  /**
+   * 全部地址的截止时间，毫秒
+   */
+  @Value("${spring.cloud.config.health.deadline-ms:3000}")
+  private long deadlineMs = 3000;
+
+  /**
+   * 每个地址最近一次的ETag
+   */
+  private final Map<String, String> etags = new ConcurrentHashMap<>();
+
+  private volatile RestTemplate restTemplate;
+
+  private volatile ExecutorService executor;
+
+  private final LatencyHistogram latencyHistogram = new LatencyHistogram();
+
+  private final HealthProbeMetrics metrics = new HealthProbeMetrics("config");
+
+  @Override
+  public void setLatencyWindowMs(long windowMs) {
+    this.latencyHistogram.setWindowMs(windowMs);
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    this.metrics.bindTo(registry);
+  }
+
+  /**
+   * 健康
+   *
+   * @return {@link Health}
+   */@Override
+  public Health health() {
+    // 健康检查的逻辑
+    String[] uris = properties.getUri();
+    Map<String, Callable<Boolean>> tasks = new LinkedHashMap<>();
+    for (String uri : uris) {
+      tasks.put(uri, () -> probe(uri));
+    }
+
+    long startTime = System.nanoTime();
+    Map<String, Object> servers = new LinkedHashMap<>();
+    int upCount = 0;
+    boolean primaryUp = false;
+    for (Map.Entry<String, ConcurrentProbes.ProbeResult<Boolean>> entry
+        : ConcurrentProbes.invokeAll(getExecutor(), tasks, deadlineMs).entrySet()) {
+      String uri = entry.getKey();
+      ConcurrentProbes.ProbeResult<Boolean> probeResult = entry.getValue();
+      Map<String, Object> server = new LinkedHashMap<>();
+      Status status;
+      if (probeResult.isSuccess()) {
+        status = Status.UP;
+        server.put("notModified", probeResult.getValue());
+        upCount++;
+        primaryUp |= uri.equals(uris[0]);
+      } else {
+        status = probeResult.isTimedOut() ? HealthStatuses.TIMEOUT : Status.DOWN;
+        if (probeResult.getError() != null) {
+          server.put("error", probeResult.getError().getMessage());
+        }
+      }
+      metrics.record(uri, probeResult.getElapsedNanos(), status);
+      server.put("status", status.getCode());
+      server.put("timeMs", probeResult.getElapsedMs());
+      servers.put(uri, server);
+    }
+    long elapsed = System.nanoTime() - startTime;
+    latencyHistogram.record(elapsed);
+
+    Status status;
+    if (upCount == 0) {
+      status = Status.DOWN;
+    } else if (!primaryUp || upCount < uris.length) {
+      status = HealthStatuses.DEGRADED;
+    } else {
+      status = Status.UP;
+    }
+    return new Health.Builder(status).withDetail("timeMs", TimeUnit.NANOSECONDS.toMillis(elapsed))
+    .withDetail("latency", latencyHistogram.toDetails())
+    .withDetail("servers", servers).build();
+  }
+
+  /**
+   * 探测一个配置中心地址，带上该地址上次的ETag
+   *
+   * @return 配置未变化(304)时为true
+   */private boolean probe(String uri) {
+    String name = properties.getName();
+    String profile = properties.getProfile();
+    String label = properties.getLabel();
+    String path = "/{name}/{profile}";
+    Object[] args = new String[] { name, profile };
+    if (StringUtils.hasText(label)) {
+      // 与配置客户端一致，label中的/需要转义
+      path = path + "/{label}";
+      args = new String[] { name, profile, label.replace("/", "(_)") };
+    }
+    HttpHeaders headers = new HttpHeaders();
+    // 与配置客户端一致，只有同时配置了用户名与密码时才发送basic认证，缺少密码时setBasicAuth会抛出异常
+    if (StringUtils.hasText(properties.getUsername()) && StringUtils.hasText(properties.getPassword())) {
+      headers.setBasicAuth(properties.getUsername(), properties.getPassword());
+    }
+    if (properties.getHeaders() != null) {
+      properties.getHeaders().forEach(headers::set);
+    }
+    String etag = etags.get(uri);
+    if (etag != null) {
+      headers.setIfNoneMatch(etag);
+    }
+    final HttpEntity<Void> entity = new HttpEntity<>((Void) null, headers);
+    // 只关心状态码与ETag，不解析Environment
+    ResponseEntity<Void> response = getRestTemplate().exchange(uri + path, HttpMethod.GET, entity, Void.class, args);
+    if (response.getHeaders().getETag() != null) {
+      etags.put(uri, response.getHeaders().getETag());
+    }
+    return response.getStatusCode() == HttpStatus.NOT_MODIFIED;
+  }
+
+  private RestTemplate getRestTemplate() {
+    RestTemplate restTemplate = this.restTemplate;
+    if (restTemplate == null) {
+      synchronized (this) {
+        restTemplate = this.restTemplate;
+        if (restTemplate == null) {
+          restTemplate = new RestTemplate(createRequestFactory());
+          this.restTemplate = restTemplate;
+        }
+      }
+    }
+    return restTemplate;
+  }
+
+  /**
+   * 有HttpComponents时使用带连接池的客户端，否则使用JDK的HttpURLConnection(依赖其keep-alive复用连接)
+   */
+  private ClientHttpRequestFactory createRequestFactory() {
+    if (HTTP_COMPONENTS_PRESENT) {
+      return HttpComponentsSupport.createRequestFactory(connectTimeoutMs, readTimeoutMs);
+    }
+    SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+    requestFactory.setConnectTimeout(connectTimeoutMs);
+    requestFactory.setReadTimeout(readTimeoutMs);
+    return requestFactory;
+  }
+
+  private ExecutorService getExecutor() {
+    ExecutorService executor = this.executor;
+    if (executor == null) {
+      synchronized (this) {
+        executor = this.executor;
+        if (executor == null) {
+          executor = ConcurrentProbes.newExecutor("health-config", Math.max(1, properties.getUri().length));
+          this.executor = executor;
+        }
+      }
+    }
+    return executor;
+  }
+
+  @Override
+  public void destroy() throws Exception {
+    ExecutorService executor = this.executor;
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+    RestTemplate restTemplate = this.restTemplate;
+    if (restTemplate != null && restTemplate.getRequestFactory() instanceof DisposableBean) {
+      ((DisposableBean) restTemplate.getRequestFactory()).destroy();
+    }
+  }
+
+  private static class HttpComponentsSupport {
+
+    static ClientHttpRequestFactory createRequestFactory(int connectTimeoutMs, int readTimeoutMs) {
+      HttpClient httpClient = HttpClientBuilder.create()
+          .setMaxConnPerRoute(4)
+          .setMaxConnTotal(32)
+          .disableCookieManagement()
+          .build();
+      HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
+      requestFactory.setConnectTimeout(connectTimeoutMs);
+      requestFactory.setConnectionRequestTimeout(connectTimeoutMs);
+      requestFactory.setReadTimeout(readTimeoutMs);
+      return requestFactory;
+    }
+  }
+
+}
@@ -1,161 +1,420 @@
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.actuate.health.AbstractHealthIndicator;
-import org.springframework.boot.actuate.health.Health;
-import org.springframework.boot.jdbc.DatabaseDriver;
-import org.springframework.dao.support.DataAccessUtils;
-import org.springframework.jdbc.IncorrectResultSetColumnCountException;
-import org.springframework.jdbc.core.ConnectionCallback;
-import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.RowMapper;
-import org.springframework.jdbc.support.JdbcUtils;
-import org.springframework.util.StringUtils;
-
-import javax.sql.DataSource;
-import java.sql.Connection;
-import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
-import java.sql.SQLException;
-import java.util.List;
-
-/**
- * 数据库健康检查器
- * 重构自 org.springframework.boot.actuate.jdbc.DataSourceHealthIndicator
- * 增加耗时统计
- * 将该类注册到spring中时，bean name命名为dbHealthIndicator，即可替代默认实现
- *
- * @see org.springframework.boot.actuate.jdbc.DataSourceHealthIndicator
- * @see DefaultDataSourceConfig
- */
-public class DataSourceHealthIndicator extends AbstractHealthIndicator {
-    private static final String DEFAULT_QUERY = "SELECT 1";
-    @Autowired
-    private DataSource dataSource;
-
-    private String query;
-    @Autowired
-    private JdbcTemplate jdbcTemplate;
-
-    /**
-     * Create a new {@link org.springframework.boot.actuate.jdbc.DataSourceHealthIndicator} instance.
-     */
-    public DataSourceHealthIndicator() {
-        this(null, null);
-    }
-
-    /**
-     * Create a new {@link org.springframework.boot.actuate.jdbc.DataSourceHealthIndicator} using the specified
-     * {@link DataSource}.
-     *
-     * @param dataSource the data source
-     */
-    public DataSourceHealthIndicator(DataSource dataSource) {
-        this(dataSource, null);
-    }
-
-    /**
-     * Create a new {@link org.springframework.boot.actuate.jdbc.DataSourceHealthIndicator} using the specified
-     * {@link DataSource} and validation query.
-     *
-     * @param dataSource the data source
-     * @param query      the validation query to use (can be {@code null})
-     */
-    public DataSourceHealthIndicator(DataSource dataSource, String query) {
-        super("DataSource health check failed");
-        this.dataSource = dataSource;
-        this.query = query;
-        this.jdbcTemplate = (dataSource != null ? new JdbcTemplate(dataSource) : null);
-    }
-
-
-    @Override
-    protected void doHealthCheck(Health.Builder builder) throws Exception {
-
-        if (this.dataSource == null) {
-            builder.up().withDetail("database", "unknown");
-        } else {
-            doDataSourceHealthCheck(builder);
-        }
-    }
-
-    private void doDataSourceHealthCheck(Health.Builder builder) throws Exception {
-        String product = getProduct();
-        builder.up().withDetail("database", product);
-        String validationQuery = getValidationQuery(product);
-        if (StringUtils.hasText(validationQuery)) {
-            // Avoid calling getObject as it breaks MySQL on Java 7
-            // 增加耗时统计
-            long startTime = System.currentTimeMillis();
-            List<Object> results = this.jdbcTemplate.query(validationQuery, new SingleColumnRowMapper());
-            long endTime = System.currentTimeMillis();
-            Object result = DataAccessUtils.requiredSingleResult(results);
-            builder.withDetail("result", "1".equals(String.valueOf(result)) ? "ok" : "no");
-            builder.withDetail("timeMs", endTime - startTime);//毫秒
-        }
-    }
-
-    private String getProduct() {
-        return this.jdbcTemplate.execute((ConnectionCallback<String>) this::getProduct);
-    }
-
-    private String getProduct(Connection connection) throws SQLException {
-        return connection.getMetaData().getDatabaseProductName();
-    }
-
-    protected String getValidationQuery(String product) {
-        String query = this.query;
-        if (!StringUtils.hasText(query)) {
-            DatabaseDriver specific = DatabaseDriver.fromProductName(product);
-            query = specific.getValidationQuery();
-        }
-        if (!StringUtils.hasText(query)) {
-            query = DEFAULT_QUERY;
-        }
-        return query;
-    }
-
-    /**
-     * Set the {@link DataSource} to use.
-     *
-     * @param dataSource the data source
-     */
-    public void setDataSource(DataSource dataSource) {
-        this.dataSource = dataSource;
-        this.jdbcTemplate = new JdbcTemplate(dataSource);
-    }
-
-    /**
-     * Set a specific validation query to use to validate a connection. If none is set, a
-     * default validation query is used.
-     *
-     * @param query the query
-     */
-    public void setQuery(String query) {
-        this.query = query;
-    }
-
-    /**
-     * Return the validation query or {@code null}.
-     *
-     * @return the query
-     */
-    public String getQuery() {
-        return this.query;
-    }
-
-    /**
-     * {@link RowMapper} that expects and returns results from a single column.
-     */
-    private static class SingleColumnRowMapper implements RowMapper<Object> {
-
-        @Override
-        public Object mapRow(ResultSet rs, int rowNum) throws SQLException {
-            ResultSetMetaData metaData = rs.getMetaData();
-            int columns = metaData.getColumnCount();
-            if (columns != 1) {
-                throw new IncorrectResultSetColumnCountException(1, columns);
-            }
-            return JdbcUtils.getResultSetValue(rs, 1);
-        }
-
-    }
-}
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.boot.jdbc.DatabaseDriver;
+import org.springframework.context.EnvironmentAware;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.PropertyResolver;
+import org.springframework.dao.support.DataAccessUtils;
+import org.springframework.jdbc.IncorrectResultSetColumnCountException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.util.StringUtils;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 数据库健康检查器
+ * 重构自 org.springframework.boot.actuate.jdbc.DataSourceHealthIndicator
+ * 增加耗时统计
+ * 数据库产品名与校验查询只解析一次，可选使用 Connection.isValid 代替校验查询
+ * 先读取Hikari连接池统计，饱和时报告DEGRADED且不再借出连接，也可以在健康检查专用的单连接上探测
+ * 可选查询MySQL/PostgreSQL副本的复制延迟，落后过多时报告DEGRADED
+ * 将该类注册到spring中时，bean name命名为dbHealthIndicator，即可替代默认实现
+ *
+ * @see org.springframework.boot.actuate.jdbc.DataSourceHealthIndicator
+ * @see DefaultDataSourceConfig
+ */
+@HealthCost(HealthCostTier.SINGLE_ROUND_TRIP)
+public class DataSourceHealthIndicator extends AbstractHealthIndicator implements MeterBinder, DisposableBean,
+    EnvironmentAware, LatencyWindowAware {
+    private static final String DEFAULT_QUERY = "SELECT 1";
+    @Autowired
+    private DataSource dataSource;
+
+    private String query;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * 为true时使用JDBC4的 Connection.isValid 校验连接，代替执行校验查询
+     * 配置项 management.health.db.use-is-valid
+     */
+    private boolean useIsValid;
+
+    /**
+     * Connection.isValid 的超时时间，秒
+     * 配置项 management.health.db.validation-timeout-seconds
+     */
+    private int validationTimeoutSeconds = 1;
+
+    /**
+     * 缓存的数据库产品名与校验查询，设置数据源或查询时重置
+     */
+    private volatile String product;
+    private volatile String resolvedQuery;
+
+    /**
+     * 连接池使用率达到该阈值或有线程等待连接时视为饱和，报告DEGRADED
+     * 配置项 management.health.db.saturation-threshold
+     */
+    private double saturationThreshold = 1.0;
+
+    /**
+     * 为true时在独立的单连接上执行探测，不从连接池借出连接
+     * 配置项 management.health.db.dedicated-connection
+     */
+    private boolean dedicatedConnection;
+
+    /**
+     * 为true时查询MySQL/PostgreSQL副本的复制延迟
+     * 配置项 management.health.db.replication-lag.enabled
+     */
+    private boolean replicationLagEnabled;
+
+    /**
+     * 复制延迟超过该值或复制已停止时报告DEGRADED，秒
+     * 配置项 management.health.db.replication-lag.max-seconds
+     */
+    private double maxReplicationLagSeconds = 30;
+
+    private SingleConnectionDataSource healthDataSource;
+    private volatile JdbcTemplate healthJdbcTemplate;
+
+    private final LatencyHistogram latencyHistogram = new LatencyHistogram();
+
+    private final HealthProbeMetrics metrics = new HealthProbeMetrics("datasource");
+
+    private String metricsTarget = HealthProbeMetrics.DEFAULT_TARGET;
+
+    @Override
+    public void setLatencyWindowMs(long windowMs) {
+        this.latencyHistogram.setWindowMs(windowMs);
+    }
+
+    @Override
+    public void setEnvironment(Environment environment) {
+        configure(environment);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.metrics.bindTo(registry);
+    }
+
+    /**
+     * Create a new {@link org.springframework.boot.actuate.jdbc.DataSourceHealthIndicator} instance.
+     */
+    public DataSourceHealthIndicator() {
+        this(null, null);
+    }
+
+    /**
+     * Create a new {@link org.springframework.boot.actuate.jdbc.DataSourceHealthIndicator} using the specified
+     * {@link DataSource}.
+     *
+     * @param dataSource the data source
+     */
+    public DataSourceHealthIndicator(DataSource dataSource) {
+        this(dataSource, null);
+    }
+
+    /**
+     * Create a new {@link org.springframework.boot.actuate.jdbc.DataSourceHealthIndicator} using the specified
+     * {@link DataSource} and validation query.
+     *
+     * @param dataSource the data source
+     * @param query      the validation query to use (can be {@code null})
+     */
+    public DataSourceHealthIndicator(DataSource dataSource, String query) {
+        super("DataSource health check failed");
+        this.dataSource = dataSource;
+        this.query = query;
+        this.jdbcTemplate = (dataSource != null ? new JdbcTemplate(dataSource) : null);
+    }
+
+
+    @Override
+    protected void doHealthCheck(Health.Builder builder) throws Exception {
+
+        if (this.dataSource == null) {
+            builder.up().withDetail("database", "unknown");
+        } else {
+            doDataSourceHealthCheck(builder);
+        }
+    }
+
+    private void doDataSourceHealthCheck(Health.Builder builder) throws Exception {
+        // 先读取连接池统计，不借出连接
+        HikariPoolStats poolStats = HikariPoolStats.of(this.dataSource);
+        boolean saturated = poolStats != null && poolStats.isSaturated(this.saturationThreshold);
+        if (poolStats != null) {
+            builder.withDetail("pool", poolStats.toDetails());
+        }
+        JdbcTemplate template = getProbeJdbcTemplate();
+        if (saturated && template == this.jdbcTemplate) {
+            // 连接池已饱和，不再与业务争抢连接
+            String product = this.product;
+            builder.status(HealthStatuses.DEGRADED)
+                .withDetail("database", product != null ? product : "unknown")
+                .withDetail("result", "saturated");
+            return;
+        }
+        boolean healthy;
+        try {
+            String product = getProduct(template);
+            builder.up().withDetail("database", product);
+            healthy = this.useIsValid ? doConnectionValidCheck(builder, template)
+                : doValidationQueryCheck(builder, template, product);
+        } catch (Exception e) {
+            if (template != this.jdbcTemplate) {
+                resetHealthDataSource();
+            }
+            throw e;
+        }
+        if (healthy && this.replicationLagEnabled) {
+            healthy = doReplicationLagCheck(builder, template);
+        }
+        if (saturated && healthy) {
+            builder.status(HealthStatuses.DEGRADED);
+        }
+    }
+
+    /**
+     * 查询副本的复制延迟，查询失败(例如缺少REPLICATION CLIENT权限)时只记录原因，不影响状态
+     */
+    private boolean doReplicationLagCheck(Health.Builder builder, JdbcTemplate template) {
+        ReplicationLag lag;
+        try {
+            lag = ReplicationLag.query(template, this.product);
+        } catch (Exception e) {
+            builder.withDetail("replicationLag", "unavailable: " + e.getMessage());
+            return true;
+        }
+        if (lag == null || !lag.isReplica()) {
+            return true;
+        }
+        builder.withDetail("replicationLagSeconds", lag.getSeconds() != null ? lag.getSeconds() : "stopped");
+        if (lag.isLagging(this.maxReplicationLagSeconds)) {
+            builder.status(HealthStatuses.DEGRADED);
+            return false;
+        }
+        return true;
+    }
+
+    private boolean doValidationQueryCheck(Health.Builder builder, JdbcTemplate template, String product) {
+        String validationQuery = getResolvedValidationQuery(product);
+        if (StringUtils.hasText(validationQuery)) {
+            // Avoid calling getObject as it breaks MySQL on Java 7
+            // 增加耗时统计
+            long startTime = System.nanoTime();
+            boolean success = false;
+            List<Object> results;
+            try {
+                results = template.query(validationQuery, new SingleColumnRowMapper());
+                success = true;
+            } finally {
+                recordProbe(builder, startTime, success);
+            }
+            Object result = DataAccessUtils.requiredSingleResult(results);
+            builder.withDetail("result", "1".equals(String.valueOf(result)) ? "ok" : "no");
+        }
+        return true;
+    }
+
+    /**
+     * 使用 Connection.isValid 校验，只借出一次连接，不执行校验查询
+     */
+    private boolean doConnectionValidCheck(Health.Builder builder, JdbcTemplate template) {
+        long startTime = System.nanoTime();
+        boolean success = false;
+        try {
+            success = Boolean.TRUE.equals(template.execute(
+                (ConnectionCallback<Boolean>) connection -> connection.isValid(this.validationTimeoutSeconds)));
+        } finally {
+            recordProbe(builder, startTime, success);
+        }
+        builder.withDetail("result", success ? "ok" : "no");
+        if (!success) {
+            builder.down();
+        }
+        return success;
+    }
+
+    /**
+     * 探测使用的JdbcTemplate，开启独立连接且数据源为Hikari时使用健康检查专用的单连接
+     */
+    private JdbcTemplate getProbeJdbcTemplate() {
+        if (!this.dedicatedConnection) {
+            return this.jdbcTemplate;
+        }
+        JdbcTemplate template = this.healthJdbcTemplate;
+        if (template == null) {
+            synchronized (this) {
+                template = this.healthJdbcTemplate;
+                if (template == null) {
+                    SingleConnectionDataSource healthDataSource = HikariPoolStats.newHealthDataSource(this.dataSource);
+                    if (healthDataSource == null) {
+                        return this.jdbcTemplate;
+                    }
+                    this.healthDataSource = healthDataSource;
+                    template = new JdbcTemplate(healthDataSource);
+                    this.healthJdbcTemplate = template;
+                }
+            }
+        }
+        return template;
+    }
+
+    /**
+     * 关闭健康检查专用的连接，下次探测时重新建立
+     */
+    private synchronized void resetHealthDataSource() {
+        if (this.healthDataSource != null) {
+            this.healthDataSource.destroy();
+        }
+        this.healthDataSource = null;
+        this.healthJdbcTemplate = null;
+    }
+
+    @Override
+    public void destroy() {
+        resetHealthDataSource();
+    }
+
+    private void recordProbe(Health.Builder builder, long startTime, boolean success) {
+        long elapsed = System.nanoTime() - startTime;
+        latencyHistogram.record(elapsed);
+        metrics.record(metricsTarget, elapsed, success ? Status.UP : Status.DOWN);
+        builder.withDetail("timeMs", TimeUnit.NANOSECONDS.toMillis(elapsed));//毫秒
+        builder.withDetail("latency", latencyHistogram.toDetails());
+    }
+
+    private String getProduct(JdbcTemplate template) {
+        String product = this.product;
+        if (product == null) {
+            product = template.execute((ConnectionCallback<String>) this::getProduct);
+            this.product = product;
+        }
+        return product;
+    }
+
+    private String getProduct(Connection connection) throws SQLException {
+        return connection.getMetaData().getDatabaseProductName();
+    }
+
+    private String getResolvedValidationQuery(String product) {
+        String resolvedQuery = this.resolvedQuery;
+        if (resolvedQuery == null) {
+            resolvedQuery = getValidationQuery(product);
+            this.resolvedQuery = resolvedQuery;
+        }
+        return resolvedQuery;
+    }
+
+    protected String getValidationQuery(String product) {
+        String query = this.query;
+        if (!StringUtils.hasText(query)) {
+            DatabaseDriver specific = DatabaseDriver.fromProductName(product);
+            query = specific.getValidationQuery();
+        }
+        if (!StringUtils.hasText(query)) {
+            query = DEFAULT_QUERY;
+        }
+        return query;
+    }
+
+    /**
+     * 按配置设置校验方式、饱和阈值与复制延迟，未配置的项保留字段的默认值
+     * 容器中的实例由 setEnvironment 调用，多数据源时由 MultiDataSourceHealthIndicator 对每个成员调用
+     *
+     * @param resolver 配置
+     */
+    void configure(PropertyResolver resolver) {
+        this.useIsValid = resolver.getProperty("management.health.db.use-is-valid", Boolean.class,
+            this.useIsValid);
+        this.validationTimeoutSeconds = resolver.getProperty("management.health.db.validation-timeout-seconds",
+            Integer.class, this.validationTimeoutSeconds);
+        this.saturationThreshold = resolver.getProperty("management.health.db.saturation-threshold", Double.class,
+            this.saturationThreshold);
+        this.dedicatedConnection = resolver.getProperty("management.health.db.dedicated-connection", Boolean.class,
+            this.dedicatedConnection);
+        this.replicationLagEnabled = resolver.getProperty("management.health.db.replication-lag.enabled",
+            Boolean.class, this.replicationLagEnabled);
+        this.maxReplicationLagSeconds = resolver.getProperty("management.health.db.replication-lag.max-seconds",
+            Double.class, this.maxReplicationLagSeconds);
+        setLatencyWindowMs(LatencyWindowPostProcessor.getWindowMs(resolver));
+    }
+
+    /**
+     * 设置指标的target标签，多数据源时为数据源的bean名称
+     *
+     * @param metricsTarget target标签
+     */
+    void setMetricsTarget(String metricsTarget) {
+        this.metricsTarget = metricsTarget;
+    }
+
+    /**
+     * Set the {@link DataSource} to use.
+     *
+     * @param dataSource the data source
+     */
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.product = null;
+        this.resolvedQuery = null;
+        resetHealthDataSource();
+    }
+
+    /**
+     * Set a specific validation query to use to validate a connection. If none is set, a
+     * default validation query is used.
+     *
+     * @param query the query
+     */
+    public void setQuery(String query) {
+        this.query = query;
+        this.resolvedQuery = null;
+    }
+
+    /**
+     * Return the validation query or {@code null}.
+     *
+     * @return the query
+     */
+    public String getQuery() {
+        return this.query;
+    }
+
+    /**
+     * {@link RowMapper} that expects and returns results from a single column.
+     */
+    private static class SingleColumnRowMapper implements RowMapper<Object> {
+
+        @Override
+        public Object mapRow(ResultSet rs, int rowNum) throws SQLException {
+            ResultSetMetaData metaData = rs.getMetaData();
+            int columns = metaData.getColumnCount();
+            if (columns != 1) {
+                throw new IncorrectResultSetColumnCountException(1, columns);
+            }
+            return JdbcUtils.getResultSetValue(rs, 1);
+        }
+
+    }
+}
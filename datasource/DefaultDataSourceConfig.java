@@ -1,10 +1,26 @@
-import org.springframework.context.annotation.Bean;
-
-public class DefaultDataSourceConfig {
-
-    @Bean
-    public DataSourceHealthIndicator dbHealthIndicator() {
-        return new DataSourceHealthIndicator();
-    }
-
-}
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+@Import(LatencyWindowPostProcessor.class)
+public class DefaultDataSourceConfig {
+
+    @Bean
+    @ConditionalOnProperty(value = "management.health.db.multi.enabled", havingValue = "false", matchIfMissing = true)
+    public DataSourceHealthIndicator dbHealthIndicator() {
+        return new DataSourceHealthIndicator();
+    }
+
+    @Bean("dbHealthIndicator")
+    @ConditionalOnProperty(value = "management.health.db.multi.enabled", havingValue = "true")
+    public MultiDataSourceHealthIndicator multiDataSourceHealthIndicator(Map<String, DataSource> dataSources,
+        @Value("${management.health.db.multi.deadline-ms:3000}") long deadlineMs,
+        @Value("${management.health.db.multi.concurrency:8}") int concurrency) {
+        return new MultiDataSourceHealthIndicator(dataSources, deadlineMs, concurrency);
+    }
+
+}
@@ -0,0 +1,123 @@
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.util.ClassUtils;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Hikari连接池的统计
+ * 直接读取 HikariPoolMXBean 的计数，不会从连接池借出连接
+ * Hikari的类只在 HikariSupport 中引用，类路径上没有Hikari时不会加载
+ *
+ * @see DataSourceHealthIndicator
+ */
+class HikariPoolStats {
+
+    private static final boolean HIKARI_PRESENT = ClassUtils.isPresent("com.zaxxer.hikari.HikariDataSource",
+        HikariPoolStats.class.getClassLoader());
+
+    private final int active;
+
+    private final int idle;
+
+    private final int pending;
+
+    private final int max;
+
+    private HikariPoolStats(int active, int idle, int pending, int max) {
+        this.active = active;
+        this.idle = idle;
+        this.pending = pending;
+        this.max = max;
+    }
+
+    /**
+     * 读取连接池统计
+     *
+     * @param dataSource 数据源
+     * @return 没有Hikari、非Hikari数据源或连接池尚未启动时为null
+     */
+    static HikariPoolStats of(DataSource dataSource) {
+        if (!HIKARI_PRESENT || dataSource == null) {
+            return null;
+        }
+        return HikariSupport.stats(dataSource);
+    }
+
+    /**
+     * 按连接池的配置创建一个独立的单连接数据源，供健康检查专用，不占用连接池
+     *
+     * @param dataSource 数据源
+     * @return 没有Hikari或非Hikari数据源时为null
+     */
+    static SingleConnectionDataSource newHealthDataSource(DataSource dataSource) {
+        if (!HIKARI_PRESENT || dataSource == null) {
+            return null;
+        }
+        return HikariSupport.newHealthDataSource(dataSource);
+    }
+
+    /**
+     * 是否饱和：有线程在等待连接，或使用率达到阈值
+     *
+     * @param threshold 使用率阈值，0到1
+     * @return 是否饱和
+     */
+    boolean isSaturated(double threshold) {
+        return pending > 0 || (max > 0 && (double) active / max >= threshold);
+    }
+
+    Map<String, Object> toDetails() {
+        Map<String, Object> details = new LinkedHashMap<>();
+        details.put("active", active);
+        details.put("idle", idle);
+        details.put("pending", pending);
+        details.put("max", max);
+        return details;
+    }
+
+    private static class HikariSupport {
+
+        static HikariPoolStats stats(DataSource dataSource) {
+            HikariDataSource hikariDataSource = unwrap(dataSource);
+            if (hikariDataSource == null) {
+                return null;
+            }
+            HikariPoolMXBean pool = hikariDataSource.getHikariPoolMXBean();
+            if (pool == null) {
+                return null;
+            }
+            return new HikariPoolStats(pool.getActiveConnections(), pool.getIdleConnections(),
+                pool.getThreadsAwaitingConnection(), hikariDataSource.getMaximumPoolSize());
+        }
+
+        static SingleConnectionDataSource newHealthDataSource(DataSource dataSource) {
+            HikariDataSource hikariDataSource = unwrap(dataSource);
+            if (hikariDataSource == null) {
+                return null;
+            }
+            SingleConnectionDataSource healthDataSource = new SingleConnectionDataSource(
+                hikariDataSource.getJdbcUrl(), hikariDataSource.getUsername(), hikariDataSource.getPassword(), true);
+            if (hikariDataSource.getDriverClassName() != null) {
+                healthDataSource.setDriverClassName(hikariDataSource.getDriverClassName());
+            }
+            return healthDataSource;
+        }
+
+        private static HikariDataSource unwrap(DataSource dataSource) {
+            try {
+                if (dataSource instanceof HikariDataSource) {
+                    return (HikariDataSource) dataSource;
+                }
+                return dataSource.isWrapperFor(HikariDataSource.class)
+                    ? dataSource.unwrap(HikariDataSource.class) : null;
+            } catch (SQLException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.context.EnvironmentAware;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 多数据源健康检查
+ * 为容器中每个 {@link DataSource} 创建一个 {@link DataSourceHealthIndicator}，主库、只读副本与分片并发探测，
+ * 整体耗时约等于最慢的数据源，每个数据源单独给出状态、耗时与复制延迟，截止时间内未返回的记为UNKNOWN
+ * 路由数据源 {@link AbstractRoutingDataSource} 只是转发到其他数据源，不单独探测
+ * 将该类注册到spring中时，bean name命名为dbHealthIndicator，即可替代默认实现
+ *
+ * @see DataSourceHealthIndicator
+ * @see DefaultDataSourceConfig
+ */
+@HealthCost(HealthCostTier.FAN_OUT)
+public class MultiDataSourceHealthIndicator extends AbstractHealthIndicator implements MeterBinder, EnvironmentAware,
+    DisposableBean {
+
+    private final Map<String, DataSourceHealthIndicator> members;
+
+    private final long deadlineMs;
+
+    private final ExecutorService executor;
+
+    /**
+     * 创建多数据源健康检查
+     *
+     * @param dataSources 以bean名称为key的数据源
+     * @param deadlineMs  全部数据源的截止时间，毫秒
+     * @param concurrency 不支持虚拟线程时的并发上限
+     */
+    public MultiDataSourceHealthIndicator(Map<String, DataSource> dataSources, long deadlineMs, int concurrency) {
+        super("DataSource health check failed");
+        Map<String, DataSourceHealthIndicator> members = new LinkedHashMap<>();
+        dataSources.forEach((name, dataSource) -> {
+            if (!(dataSource instanceof AbstractRoutingDataSource)) {
+                DataSourceHealthIndicator member = new DataSourceHealthIndicator(dataSource);
+                member.setMetricsTarget(name);
+                members.put(name, member);
+            }
+        });
+        this.members = Collections.unmodifiableMap(members);
+        this.deadlineMs = deadlineMs;
+        this.executor = ConcurrentProbes.newVirtualOrBoundedExecutor("health-db", concurrency);
+    }
+
+    @Override
+    public void setEnvironment(Environment environment) {
+        members.values().forEach(member -> member.configure(environment));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        members.values().forEach(member -> member.bindTo(registry));
+    }
+
+    @Override
+    protected void doHealthCheck(Health.Builder builder) throws Exception {
+        Map<String, Callable<Health>> tasks = new LinkedHashMap<>(members.size() * 2);
+        members.forEach((name, member) -> tasks.put(name, member::health));
+
+        Set<Status> statuses = new LinkedHashSet<>();
+        ConcurrentProbes.invokeAll(executor, tasks, deadlineMs).forEach((name, probeResult) -> {
+            Health health;
+            if (probeResult.isTimedOut()) {
+                health = Health.unknown()
+                    .withDetail("error", HealthStatuses.TIMEOUT.getCode())
+                    .withDetail("elapsedMs", probeResult.getElapsedMs())
+                    .build();
+            } else if (probeResult.isSuccess()) {
+                health = probeResult.getValue();
+            } else {
+                health = Health.down().withException(probeResult.getError())
+                    .withDetail("elapsedMs", probeResult.getElapsedMs())
+                    .build();
+            }
+            builder.withDetail(name, health);
+            statuses.add(health.getStatus());
+        });
+        builder.status(statuses.isEmpty() ? Status.UNKNOWN : HealthStatuses.AGGREGATOR.getAggregateStatus(statuses));
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+        members.values().forEach(DataSourceHealthIndicator::destroy);
+    }
+}
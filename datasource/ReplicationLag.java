@@ -0,0 +1,110 @@
+import org.springframework.boot.jdbc.DatabaseDriver;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 只读副本的复制延迟
+ * MySQL/MariaDB 读取 SHOW REPLICA STATUS 的 Seconds_Behind_Source，
+ * 不支持该语句的旧版本(MySQL 8.0.22以前、MariaDB 10.5.1以前)退回 SHOW SLAVE STATUS 的 Seconds_Behind_Master，
+ * PostgreSQL 在恢复模式下比较最后回放事务的时间，已回放到最新的WAL时延迟为0
+ *
+ * @see DataSourceHealthIndicator
+ */
+final class ReplicationLag {
+
+    private static final String MYSQL_QUERY = "SHOW REPLICA STATUS";
+
+    private static final String MYSQL_LEGACY_QUERY = "SHOW SLAVE STATUS";
+
+    private static final String POSTGRESQL_QUERY = "SELECT pg_is_in_recovery() AS replica, "
+        + "CASE WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 "
+        + "ELSE EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) END AS lag";
+
+    /**
+     * 不是副本，例如主库
+     */
+    static final ReplicationLag PRIMARY = new ReplicationLag(false, null);
+
+    private final boolean replica;
+
+    private final Double seconds;
+
+    private ReplicationLag(boolean replica, Double seconds) {
+        this.replica = replica;
+        this.seconds = seconds;
+    }
+
+    /**
+     * 查询复制延迟
+     *
+     * @param template 执行查询的JdbcTemplate
+     * @param product  数据库产品名
+     * @return 不支持的数据库为null
+     */
+    static ReplicationLag query(JdbcTemplate template, String product) {
+        switch (DatabaseDriver.fromProductName(product)) {
+            case MYSQL:
+            case MARIADB:
+                return queryMysql(template);
+            case POSTGRESQL:
+                return queryPostgresql(template);
+            default:
+                return null;
+        }
+    }
+
+    private static ReplicationLag queryMysql(JdbcTemplate template) {
+        List<Map<String, Object>> rows;
+        String column;
+        try {
+            rows = template.queryForList(MYSQL_QUERY);
+            column = "Seconds_Behind_Source";
+        } catch (BadSqlGrammarException e) {
+            rows = template.queryForList(MYSQL_LEGACY_QUERY);
+            column = "Seconds_Behind_Master";
+        }
+        if (rows.isEmpty()) {
+            return PRIMARY;
+        }
+        // 复制线程停止时延迟为NULL，MariaDB的 SHOW REPLICA STATUS 仍然返回 Seconds_Behind_Master
+        Map<String, Object> row = rows.get(0);
+        Object seconds = row.containsKey(column) ? row.get(column) : row.get("Seconds_Behind_Master");
+        return new ReplicationLag(true, seconds instanceof Number ? ((Number) seconds).doubleValue() : null);
+    }
+
+    private static ReplicationLag queryPostgresql(JdbcTemplate template) {
+        Map<String, Object> row = template.queryForMap(POSTGRESQL_QUERY);
+        if (!Boolean.TRUE.equals(row.get("replica"))) {
+            return PRIMARY;
+        }
+        Object seconds = row.get("lag");
+        return new ReplicationLag(true, seconds instanceof Number ? ((Number) seconds).doubleValue() : null);
+    }
+
+    /**
+     * @return 是否为副本
+     */
+    boolean isReplica() {
+        return replica;
+    }
+
+    /**
+     * @return 延迟秒数，复制已停止或未知时为null
+     */
+    Double getSeconds() {
+        return seconds;
+    }
+
+    /**
+     * 是否落后过多
+     *
+     * @param maxSeconds 允许的最大延迟，秒
+     * @return 复制已停止或延迟超过阈值
+     */
+    boolean isLagging(double maxSeconds) {
+        return replica && (seconds == null || seconds > maxSeconds);
+    }
+}
@@ -1,116 +1,522 @@
-import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Maps;
-import org.apache.dubbo.common.extension.ExtensionLoader;
-import org.apache.dubbo.common.status.StatusChecker;
-import org.apache.dubbo.config.spring.ReferenceBean;
-import org.apache.dubbo.config.spring.beans.factory.annotation.ReferenceAnnotationBeanPostProcessor;
-import org.apache.dubbo.rpc.service.EchoService;
-import org.springframework.beans.BeansException;
-import org.springframework.boot.actuate.health.AbstractHealthIndicator;
-import org.springframework.boot.actuate.health.Health;
-import org.springframework.boot.actuate.health.Status;
-import org.springframework.context.ApplicationContext;
-import org.springframework.context.ApplicationContextAware;
-
-import java.util.Map;
-
-import static org.apache.dubbo.common.extension.ExtensionLoader.getExtensionLoader;
-
-/**
- * dubbo的健康检查器
- * 将该类注册成为spring bean后即可生效
- *
- * @see DefaultDubboConfig
- */
-public class DubboHealthIndicator extends AbstractHealthIndicator implements ApplicationContextAware {
-
-    protected static final String ECHO_MESSAGE = "ok";
-
-    private ApplicationContext applicationContext;
-
-    private Boolean invokeCheckInitiated = false;
-    private final Map<String, String> invokeCheckReferenceBeanNameMap = Maps.newHashMap();
-    private final Map<String, ReferenceBean<?>> invokeCheckReferenceBeanCacheMap = Maps.newHashMap();
-
-    @Override
-    protected void doHealthCheck(Health.Builder builder) {
-        ExtensionLoader<StatusChecker> extensionLoader = getExtensionLoader(StatusChecker.class);
-
-        // 对线程池进行检测，基于dubbo自身的org.apache.dubbo.rpc.protocol.dubbo.status.ThreadPoolStatusChecker
-        org.apache.dubbo.common.status.Status threadpoolDubboStatus = extensionLoader.getExtension("threadpool").check();
-        Status threadpoolStatus;
-        if (org.apache.dubbo.common.status.Status.Level.OK.equals(threadpoolDubboStatus.getLevel())
-            || org.apache.dubbo.common.status.Status.Level.UNKNOWN.equals(threadpoolDubboStatus.getLevel())) {
-            threadpoolStatus = Status.UP;
-        } else {
-            threadpoolStatus = Status.DOWN;
-        }
-        builder.withDetail("threadpool", ImmutableMap.builder().put("status", threadpoolStatus.getCode()).build());
-
-        // 对注册中心进行检测，基于dubbo自身的org.apache.dubbo.registry.status.RegistryStatusChecker
-        org.apache.dubbo.common.status.Status registryDubboStatus = extensionLoader.getExtension("registry").check();
-        Status registryStatus;
-        if (org.apache.dubbo.common.status.Status.Level.OK.equals(registryDubboStatus.getLevel())) {
-            registryStatus = Status.UP;
-        } else {
-            registryStatus = Status.DOWN;
-        }
-        builder.withDetail("registry", ImmutableMap.builder().put("status", registryStatus.getCode()).build());
-
-        // 真实调用检测，基于dubbo的回声测试功能
-        ReferenceAnnotationBeanPostProcessor referenceAnnotationBeanPostProcessor = (ReferenceAnnotationBeanPostProcessor) applicationContext.getBean("referenceAnnotationBeanPostProcessor");
-        if (!invokeCheckInitiated) {
-            for (ReferenceBean<?> referenceBean : referenceAnnotationBeanPostProcessor.getReferenceBeans()) {
-                invokeCheckReferenceBeanNameMap.forEach((providerName, referenceBeanName) -> {
-                    if (referenceBeanName.equalsIgnoreCase(referenceBean.getInterface())) {
-                        invokeCheckReferenceBeanCacheMap.put(providerName, referenceBean);
-                    }
-                });
-            }
-            invokeCheckInitiated = true;
-        }
-
-        int invokeCheckUpCount = 0;
-        for (Map.Entry<String, ReferenceBean<?>> entry : invokeCheckReferenceBeanCacheMap.entrySet()) {
-            String providerName = entry.getKey();
-            ReferenceBean<?> referenceBean = entry.getValue();
-            EchoService echoService = (EchoService) referenceBean.getObject();
-            if (echoService != null) {
-                Map<String, Object> detailMap = Maps.newLinkedHashMap();
-                long startTime = System.currentTimeMillis();
-                long endTime;
-                try {
-                    String result = (String) echoService.$echo(ECHO_MESSAGE);
-                    endTime = System.currentTimeMillis();
-                    detailMap.put("status", Status.UP.getCode());
-                    detailMap.put("result", result);
-                    invokeCheckUpCount++;
-                } catch (Throwable t) {
-                    endTime = System.currentTimeMillis();
-                    detailMap.put("status", Status.DOWN.getCode());
-                    detailMap.put("error", t.getMessage());
-                }
-                detailMap.put("timeMs", endTime - startTime);
-                builder.withDetail(providerName + "-invoke-check", detailMap);
-            }
-        }
-
-        // 汇总统计
-        if (Status.UP.equals(threadpoolStatus)
-            && Status.UP.equals(registryStatus)
-            && invokeCheckUpCount >= invokeCheckReferenceBeanCacheMap.size()) {
-            builder.up();
-        } else {
-            builder.down();
-        }
-    }
-
-    @Override
-    public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
-        this.applicationContext = applicationContext;
-    }
-
-    public void registerInvokeCheckReferenceBeanName(String providerName, String referenceBeanName) {
-        this.invokeCheckReferenceBeanNameMap.put(providerName, referenceBeanName);
-    }
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.dubbo.common.extension.ExtensionLoader;
+import org.apache.dubbo.common.status.StatusChecker;
+import org.apache.dubbo.config.event.ReferenceConfigDestroyedEvent;
+import org.apache.dubbo.config.event.ReferenceConfigInitializedEvent;
+import org.apache.dubbo.config.spring.ReferenceBean;
+import org.apache.dubbo.config.spring.beans.factory.annotation.ReferenceAnnotationBeanPostProcessor;
+import org.apache.dubbo.event.Event;
+import org.apache.dubbo.event.EventDispatcher;
+import org.apache.dubbo.event.EventListener;
+import org.apache.dubbo.rpc.Invoker;
+import org.apache.dubbo.rpc.Result;
+import org.apache.dubbo.rpc.RpcContext;
+import org.apache.dubbo.rpc.RpcException;
+import org.apache.dubbo.rpc.RpcInvocation;
+import org.apache.dubbo.rpc.cluster.ClusterInvoker;
+import org.apache.dubbo.rpc.service.EchoService;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.apache.dubbo.common.constants.CommonConstants.$ECHO;
+import static org.apache.dubbo.common.constants.CommonConstants.TIMEOUT_KEY;
+import static org.apache.dubbo.common.extension.ExtensionLoader.getExtensionLoader;
+
+/**
+ * dubbo的健康检查器
+ * 回声测试通过dubbo的异步调用同时发出，每次调用有单独的超时时间，全部结果在一个截止时间内收集
+ * 也可以绕过负载均衡，对引用目录中的每个provider地址分别发出回声测试，给出健康地址的比例
+ * 回声测试目标在容器刷新、登记以及dubbo引用初始化/销毁事件时解析为不可变快照并整体替换，健康检查本身不扫描引用
+ * 将该类注册成为spring bean后即可生效
+ *
+ * @see DefaultDubboConfig
+ */
+@HealthCost(HealthCostTier.FAN_OUT)
+public class DubboHealthIndicator extends AbstractHealthIndicator implements ApplicationContextAware, MeterBinder,
+    DisposableBean, ApplicationListener<ContextRefreshedEvent>, LatencyWindowAware {
+
+    protected static final String ECHO_MESSAGE = "ok";
+
+    private ApplicationContext applicationContext;
+
+    /**
+     * 登记的回声测试目标，provider名称到接口名
+     */
+    private final Map<String, String> invokeCheckReferenceBeanNameMap = new ConcurrentHashMap<>();
+
+    /**
+     * 解析好的回声测试引用，不可变快照，在容器刷新与登记时整体替换，健康检查只读取
+     */
+    private final AtomicReference<Map<String, ReferenceBean<?>>> invokeCheckReferences =
+        new AtomicReference<>(ImmutableMap.of());
+
+    private volatile boolean contextRefreshed;
+
+    private final ReferenceLifecycleListener referenceLifecycleListener = new ReferenceLifecycleListener();
+
+    /**
+     * 每个provider一个耗时直方图
+     */
+    private final Map<String, LatencyHistogram> latencyHistograms = new ConcurrentHashMap<>();
+
+    private long latencyWindowMs = TimeUnit.SECONDS.toMillis(60);
+
+    private final HealthProbeMetrics metrics = new HealthProbeMetrics("dubbo");
+
+    /**
+     * 回声测试的调用超时，毫秒，只对健康检查的调用生效
+     */
+    @Value("${dubbo.health.invoke-timeout-ms:1000}")
+    private int invokeTimeoutMs = 1000;
+
+    /**
+     * 全部回声测试的截止时间，毫秒
+     */
+    @Value("${dubbo.health.invoke-deadline-ms:1500}")
+    private long invokeDeadlineMs = 1500;
+
+    /**
+     * 为true时绕过负载均衡，对每个provider地址分别发出回声测试
+     */
+    @Value("${dubbo.health.per-address.enabled:false}")
+    private boolean perAddressEnabled;
+
+    /**
+     * 按地址探测时不支持虚拟线程的并发上限
+     */
+    @Value("${dubbo.health.per-address.concurrency:16}")
+    private int perAddressConcurrency = 16;
+
+    private volatile ExecutorService perAddressExecutor;
+
+    @Override
+    public void setLatencyWindowMs(long windowMs) {
+        this.latencyWindowMs = windowMs;
+        this.latencyHistograms.values().forEach(histogram -> histogram.setWindowMs(latencyWindowMs));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.metrics.bindTo(registry);
+    }
+
+    @Override
+    protected void doHealthCheck(Health.Builder builder) {
+        ExtensionLoader<StatusChecker> extensionLoader = getExtensionLoader(StatusChecker.class);
+
+        // 对线程池进行检测，基于dubbo自身的org.apache.dubbo.rpc.protocol.dubbo.status.ThreadPoolStatusChecker
+        org.apache.dubbo.common.status.Status threadpoolDubboStatus = extensionLoader.getExtension("threadpool").check();
+        Status threadpoolStatus;
+        if (org.apache.dubbo.common.status.Status.Level.OK.equals(threadpoolDubboStatus.getLevel())
+            || org.apache.dubbo.common.status.Status.Level.UNKNOWN.equals(threadpoolDubboStatus.getLevel())) {
+            threadpoolStatus = Status.UP;
+        } else {
+            threadpoolStatus = Status.DOWN;
+        }
+        builder.withDetail("threadpool", ImmutableMap.builder().put("status", threadpoolStatus.getCode()).build());
+
+        // 对注册中心进行检测，基于dubbo自身的org.apache.dubbo.registry.status.RegistryStatusChecker
+        org.apache.dubbo.common.status.Status registryDubboStatus = extensionLoader.getExtension("registry").check();
+        Status registryStatus;
+        if (org.apache.dubbo.common.status.Status.Level.OK.equals(registryDubboStatus.getLevel())) {
+            registryStatus = Status.UP;
+        } else {
+            registryStatus = Status.DOWN;
+        }
+        builder.withDetail("registry", ImmutableMap.builder().put("status", registryStatus.getCode()).build());
+
+        // 真实调用检测，基于dubbo的回声测试功能
+        Map<String, ReferenceBean<?>> references = invokeCheckReferences.get();
+        Status invokeStatus = perAddressEnabled ? doPerAddressInvokeCheck(builder, references)
+            : doEchoInvokeCheck(builder, references);
+
+        // 汇总统计
+        if (!Status.UP.equals(threadpoolStatus)
+            || !Status.UP.equals(registryStatus)
+            || Status.DOWN.equals(invokeStatus)) {
+            builder.down();
+        } else if (HealthStatuses.DEGRADED.equals(invokeStatus)) {
+            builder.status(HealthStatuses.DEGRADED);
+        } else {
+            builder.up();
+        }
+    }
+
+    /**
+     * 通过引用的集群调用器发出回声测试，由负载均衡选择一个provider地址
+     *
+     * @return 全部provider都成功时为UP，否则为DOWN
+     */
+    private Status doEchoInvokeCheck(Health.Builder builder, Map<String, ReferenceBean<?>> references) {
+        // 同时异步发出全部回声测试，共用一个截止时间，整体耗时约等于最慢的provider
+        Map<String, EchoCall> echoCalls = Maps.newLinkedHashMap();
+        for (Map.Entry<String, ReferenceBean<?>> entry : references.entrySet()) {
+            EchoService echoService = (EchoService) entry.getValue().getObject();
+            if (echoService != null) {
+                echoCalls.put(entry.getKey(), EchoCall.start(echoService, invokeTimeoutMs));
+            }
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(invokeDeadlineMs);
+        int invokeCheckUpCount = 0;
+        for (Map.Entry<String, EchoCall> entry : echoCalls.entrySet()) {
+            String providerName = entry.getKey();
+            EchoCall echoCall = entry.getValue();
+            Map<String, Object> detailMap = Maps.newLinkedHashMap();
+            Status status;
+            long elapsed;
+            try {
+                EchoOutcome outcome = echoCall.outcome.get(Math.max(0, deadline - System.nanoTime()),
+                    TimeUnit.NANOSECONDS);
+                elapsed = outcome.endTime - echoCall.startTime;
+                if (outcome.error == null) {
+                    status = Status.UP;
+                    detailMap.put("status", status.getCode());
+                    detailMap.put("result", outcome.result);
+                    invokeCheckUpCount++;
+                } else {
+                    status = Status.DOWN;
+                    detailMap.put("status", status.getCode());
+                    detailMap.put("error", outcome.error.getMessage());
+                }
+            } catch (TimeoutException e) {
+                echoCall.outcome.cancel(true);
+                elapsed = System.nanoTime() - echoCall.startTime;
+                status = HealthStatuses.TIMEOUT;
+                detailMap.put("status", status.getCode());
+            } catch (InterruptedException | ExecutionException e) {
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+                elapsed = System.nanoTime() - echoCall.startTime;
+                status = Status.DOWN;
+                detailMap.put("status", status.getCode());
+                detailMap.put("error", e.getMessage());
+            }
+            LatencyHistogram latencyHistogram = latencyHistograms.computeIfAbsent(providerName,
+                name -> new LatencyHistogram(latencyWindowMs));
+            latencyHistogram.record(elapsed);
+            metrics.record(providerName, elapsed, status);
+            detailMap.put("timeMs", TimeUnit.NANOSECONDS.toMillis(elapsed));
+            detailMap.put("latency", latencyHistogram.toDetails());
+            builder.withDetail(providerName + "-invoke-check", detailMap);
+        }
+        retainTargets(echoCalls.keySet());
+        return invokeCheckUpCount >= references.size() ? Status.UP : Status.DOWN;
+    }
+
+    /**
+     * 列出每个引用目录中的全部provider地址，绕过负载均衡直接对每个地址并发发出回声测试，共用一个截止时间
+     * 每个provider给出各地址的状态与耗时，以及健康地址数与总数的比例
+     *
+     * @return 全部地址成功时为UP，某个provider没有可用地址时为DOWN，否则为DEGRADED
+     */
+    private Status doPerAddressInvokeCheck(Health.Builder builder, Map<String, ReferenceBean<?>> references) {
+        Map<ProviderAddress, Callable<Object>> tasks = Maps.newLinkedHashMap();
+        Map<String, Integer> totals = Maps.newLinkedHashMap();
+        references.forEach((providerName, referenceBean) -> {
+            List<Invoker<?>> invokers = listInvokers(referenceBean);
+            totals.put(providerName, invokers.size());
+            for (Invoker<?> invoker : invokers) {
+                tasks.put(new ProviderAddress(providerName, invoker.getUrl().getAddress()),
+                    () -> echo(invoker, invokeTimeoutMs));
+            }
+        });
+
+        Set<String> targets = new HashSet<>(tasks.size() * 2);
+        tasks.keySet().forEach(key -> targets.add(key.toTarget()));
+        // 已离开目录的地址不再保留直方图与指标
+        retainTargets(targets);
+
+        Map<String, Map<String, Object>> addressDetails = Maps.newLinkedHashMap();
+        Map<String, Integer> healthyCounts = Maps.newLinkedHashMap();
+        ConcurrentProbes.invokeAll(getPerAddressExecutor(), tasks, invokeDeadlineMs).forEach((key, probeResult) -> {
+            Status status;
+            Map<String, Object> detailMap = Maps.newLinkedHashMap();
+            if (probeResult.isSuccess()) {
+                status = Status.UP;
+                healthyCounts.merge(key.providerName, 1, Integer::sum);
+            } else {
+                status = probeResult.isTimedOut() ? HealthStatuses.TIMEOUT : Status.DOWN;
+                if (probeResult.getError() != null) {
+                    detailMap.put("error", probeResult.getError().getMessage());
+                }
+            }
+            detailMap.put("status", status.getCode());
+            String target = key.toTarget();
+            LatencyHistogram latencyHistogram = latencyHistograms.computeIfAbsent(target,
+                name -> new LatencyHistogram(latencyWindowMs));
+            latencyHistogram.record(probeResult.getElapsedNanos());
+            metrics.record(target, probeResult.getElapsedNanos(), status);
+            detailMap.put("timeMs", probeResult.getElapsedMs());
+            detailMap.put("latency", latencyHistogram.toDetails());
+            addressDetails.computeIfAbsent(key.providerName, name -> Maps.newLinkedHashMap()).put(key.address,
+                detailMap);
+        });
+
+        Status invokeStatus = Status.UP;
+        for (Map.Entry<String, Integer> entry : totals.entrySet()) {
+            String providerName = entry.getKey();
+            int total = entry.getValue();
+            int healthy = healthyCounts.getOrDefault(providerName, 0);
+            Status status;
+            if (total > 0 && healthy == total) {
+                status = Status.UP;
+            } else if (healthy > 0) {
+                status = HealthStatuses.DEGRADED;
+            } else {
+                status = Status.DOWN;
+            }
+            if (Status.DOWN.equals(status)) {
+                invokeStatus = Status.DOWN;
+            } else if (HealthStatuses.DEGRADED.equals(status) && Status.UP.equals(invokeStatus)) {
+                invokeStatus = HealthStatuses.DEGRADED;
+            }
+            Map<String, Object> detailMap = Maps.newLinkedHashMap();
+            detailMap.put("status", status.getCode());
+            detailMap.put("healthy", healthy);
+            detailMap.put("total", total);
+            detailMap.put("ratio", total > 0 ? (double) healthy / total : 0D);
+            detailMap.put("addresses", addressDetails.getOrDefault(providerName, Collections.emptyMap()));
+            builder.withDetail(providerName + "-invoke-check", detailMap);
+        }
+        return invokeStatus;
+    }
+
+    /**
+     * 只保留本次探测目标的耗时直方图与指标，provider下线或地址离开目录后随之移除
+     */
+    private void retainTargets(Set<String> targets) {
+        latencyHistograms.keySet().retainAll(targets);
+        metrics.retainTargets(targets);
+    }
+
+    /**
+     * 引用目录中的全部provider调用器，不是集群调用器时(例如injvm)只有引用自身
+     */
+    private static List<Invoker<?>> listInvokers(ReferenceBean<?> referenceBean) {
+        Invoker<?> invoker = referenceBean.getInvoker();
+        if (invoker == null) {
+            return Collections.emptyList();
+        }
+        if (invoker instanceof ClusterInvoker) {
+            return new ArrayList<>(((ClusterInvoker<?>) invoker).getDirectory().getAllInvokers());
+        }
+        return Collections.singletonList(invoker);
+    }
+
+    /**
+     * 直接对一个provider地址发出回声测试
+     */
+    private static Object echo(Invoker<?> invoker, int timeoutMs) throws Exception {
+        RpcInvocation invocation = new RpcInvocation($ECHO, new Class<?>[]{Object.class}, new Object[]{ECHO_MESSAGE});
+        invocation.setAttachment(TIMEOUT_KEY, String.valueOf(timeoutMs));
+        invocation.setInvoker(invoker);
+        Result result = invoker.invoke(invocation);
+        if (result.hasException()) {
+            Throwable error = result.getException();
+            throw error instanceof Exception ? (Exception) error : new RpcException(error);
+        }
+        return result.getValue();
+    }
+
+    private ExecutorService getPerAddressExecutor() {
+        ExecutorService executor = this.perAddressExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = this.perAddressExecutor;
+                if (executor == null) {
+                    executor = ConcurrentProbes.newVirtualOrBoundedExecutor("health-dubbo", perAddressConcurrency);
+                    this.perAddressExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    @Override
+    public void destroy() {
+        EventDispatcher.getDefaultExtension().removeEventListener(referenceLifecycleListener);
+        ExecutorService executor = this.perAddressExecutor;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
+        this.applicationContext = applicationContext;
+    }
+
+    @Override
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+        if (event.getApplicationContext() == this.applicationContext) {
+            if (!this.contextRefreshed) {
+                // 容器刷新后才创建(例如延迟初始化)或销毁的引用，由dubbo的引用事件触发重建快照
+                EventDispatcher.getDefaultExtension().addEventListener(referenceLifecycleListener);
+            }
+            this.contextRefreshed = true;
+            refreshInvokeCheckReferences();
+        }
+    }
+
+    /**
+     * 登记回声测试目标，容器已刷新时立即生效
+     *
+     * @param providerName      provider名称，作为健康信息的key
+     * @param referenceBeanName 引用的接口名
+     */
+    public void registerInvokeCheckReferenceBeanName(String providerName, String referenceBeanName) {
+        this.invokeCheckReferenceBeanNameMap.put(providerName, referenceBeanName);
+        if (this.contextRefreshed) {
+            refreshInvokeCheckReferences();
+        }
+    }
+
+    /**
+     * 重新匹配登记的目标与容器中的引用，生成新的快照后整体替换
+     * 容器刷新、登记以及引用初始化/销毁时自动调用
+     */
+    public synchronized void refreshInvokeCheckReferences() {
+        if (this.applicationContext == null
+            || !this.applicationContext.containsBean(ReferenceAnnotationBeanPostProcessor.BEAN_NAME)) {
+            return;
+        }
+        ReferenceAnnotationBeanPostProcessor referenceAnnotationBeanPostProcessor = this.applicationContext.getBean(
+            ReferenceAnnotationBeanPostProcessor.BEAN_NAME, ReferenceAnnotationBeanPostProcessor.class);
+        Map<String, ReferenceBean<?>> references = Maps.newLinkedHashMap();
+        for (ReferenceBean<?> referenceBean : referenceAnnotationBeanPostProcessor.getReferenceBeans()) {
+            invokeCheckReferenceBeanNameMap.forEach((providerName, referenceBeanName) -> {
+                if (referenceBeanName.equalsIgnoreCase(referenceBean.getInterface())) {
+                    references.put(providerName, referenceBean);
+                }
+            });
+        }
+        this.invokeCheckReferences.set(ImmutableMap.copyOf(references));
+    }
+
+    /**
+     * 监听dubbo引用的初始化与销毁，容器刷新后重建回声测试目标的快照
+     */
+    private final class ReferenceLifecycleListener implements EventListener<Event> {
+
+        @Override
+        public void onEvent(Event event) {
+            if ((event instanceof ReferenceConfigInitializedEvent || event instanceof ReferenceConfigDestroyedEvent)
+                && contextRefreshed) {
+                refreshInvokeCheckReferences();
+            }
+        }
+    }
+
+    /**
+     * 一个provider的一个地址
+     */
+    private static final class ProviderAddress {
+
+        private final String providerName;
+
+        private final String address;
+
+        private ProviderAddress(String providerName, String address) {
+            this.providerName = providerName;
+            this.address = address;
+        }
+
+        private String toTarget() {
+            return providerName + "/" + address;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ProviderAddress)) {
+                return false;
+            }
+            ProviderAddress that = (ProviderAddress) o;
+            return providerName.equals(that.providerName) && address.equals(that.address);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(providerName, address);
+        }
+    }
+
+    /**
+     * 一次异步回声测试
+     */
+    private static final class EchoCall {
+
+        private final long startTime;
+
+        private final CompletableFuture<EchoOutcome> outcome;
+
+        private EchoCall(long startTime, CompletableFuture<EchoOutcome> outcome) {
+            this.startTime = startTime;
+            this.outcome = outcome;
+        }
+
+        /**
+         * 通过dubbo的异步调用发出回声测试，超时时间只对本次调用生效
+         */
+        static EchoCall start(EchoService echoService, int timeoutMs) {
+            long startTime = System.nanoTime();
+            CompletableFuture<Object> future;
+            try {
+                RpcContext.getContext().setAttachment(TIMEOUT_KEY, String.valueOf(timeoutMs));
+                future = RpcContext.getContext().asyncCall(() -> echoService.$echo(ECHO_MESSAGE));
+            } catch (Throwable t) {
+                future = new CompletableFuture<>();
+                future.completeExceptionally(t);
+            }
+            return new EchoCall(startTime, future.handle((result, error) -> new EchoOutcome(result,
+                error instanceof CompletionException && error.getCause() != null ? error.getCause() : error,
+                System.nanoTime())));
+        }
+    }
+
+    private static final class EchoOutcome {
+
+        private final Object result;
+
+        private final Throwable error;
+
+        private final long endTime;
+
+        private EchoOutcome(Object result, Throwable error, long endTime) {
+            this.result = result;
+            this.error = error;
+            this.endTime = endTime;
+        }
+    }
 }
\ No newline at end of file
@@ -1,25 +1,41 @@
-
-import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
-import org.springframework.context.annotation.Bean;
-import org.springframework.context.annotation.Configuration;
-
-/**
- * 默认的尤里卡客户端检查
- *
- * @author xuhui
- * @date 2022/03/15
- */@Configuration
-public class DefaultEurekaClientConfig {
-
-    /**
-     * 尤里卡客户健康指示器
-     *
-     * @return {@link EurekaClientHealthIndicator}
-     */
-    @Bean
-    @ConditionalOnMissingBean
-    public EurekaClientHealthIndicator eurekaClientHealthIndicator(){
-        return new EurekaClientHealthIndicator();
-    }
-
-}
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+
+/**
+ * 默认的尤里卡客户端检查
+ *
+ * @author xuhui
+ * @date 2022/03/15
+ */@Configuration
+@Import(LatencyWindowPostProcessor.class)
+public class DefaultEurekaClientConfig {
+
+    /**
+     * 尤里卡客户健康指示器
+     *
+     * @return {@link EurekaClientHealthIndicator}
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public EurekaClientHealthIndicator eurekaClientHealthIndicator(){
+        return new EurekaClientHealthIndicator();
+    }
+
+    /**
+     * 尤里卡探测分片端点，供同服务的其他副本读取本副本的探测结果
+     *
+     * @param eurekaClientHealthIndicator 尤里卡客户健康指示器
+     * @return {@link EurekaShardEndpoint}
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(value = "eureka.client.health.sharding.enabled", havingValue = "true")
+    public EurekaShardEndpoint eurekaShardEndpoint(EurekaClientHealthIndicator eurekaClientHealthIndicator){
+        return new EurekaShardEndpoint(eurekaClientHealthIndicator);
+    }
+
+}
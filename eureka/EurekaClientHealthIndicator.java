@@ -1,180 +1,297 @@
-
-import com.netflix.appinfo.InstanceInfo;
-import com.netflix.discovery.DiscoveryClient;
-import com.netflix.discovery.EurekaClient;
-import com.netflix.discovery.EurekaClientConfig;
-import com.netflix.discovery.shared.Application;
-import com.netflix.discovery.shared.Applications;
-import org.springframework.aop.support.AopUtils;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.boot.actuate.health.Health;
-import org.springframework.boot.actuate.health.HealthIndicator;
-import org.springframework.boot.actuate.health.Status;
-import org.springframework.cloud.util.ProxyUtils;
-import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
-import org.springframework.web.client.RestTemplate;
-
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Objects;
-
-/**
- * 尤里卡客户健康指示器
- *
- * @author xuhui
- * @date 2022/03/15
- */
-public class EurekaClientHealthIndicator implements HealthIndicator {
-
-  @Qualifier("eurekaClient")
-  @Autowired
-  EurekaClient eurekaClient;
-  @Autowired
-  EurekaClientConfig clientConfig;
-
-
-  private  static final String  CODE_SERVER = "WMP-ENGINE";
-  private  static final String  OPEN_API = "WMP-API";
-
-  /**
-   * 健康检查
-   *
-   * @return {@link Health}
-   */@Override
-  public Health health() {
-    // 基础健康检查的逻辑
-    long startTime = System.currentTimeMillis();
-    long endTime = 0;
-    Status  satus =getStatus();
-
-    //判断关联服务是否正常
-    Applications applications = this.eurekaClient.getApplications();
-    if (applications == null) {
-      return new Health.Builder(Status.DOWN).build();
-    }
-    Map<String, Object> result = new HashMap<>();
-    for (Application application : applications.getRegisteredApplications()) {
-      if (!application.getInstances().isEmpty()) {
-
-        Map<String, Object> appResult = new HashMap<>();
-        appResult.put("total",application.getInstances().size());
-        for (InstanceInfo instanceInfo : application.getInstances()) {
-          //判断核心服务知否存在
-          getInstanceInfoHealth(instanceInfo,appResult);
-        }
-        result.put(application.getName(), appResult);
-      }
-    }
-    if (!result.containsKey(CODE_SERVER)){
-      result.put(CODE_SERVER, Status.DOWN);
-    }
-    endTime = System.currentTimeMillis();
-    return new Health.Builder(satus).withDetail("timeMs", endTime - startTime)
-    .withDetail("servers",result).build();
-  }
-
-  /**
-   * 获取服务状态
-   *
-   * @return {@link Status}
-   */
-  private Status getStatus() {
-    Status status = new Status(
-            this.eurekaClient.getInstanceRemoteStatus().toString(),
-            "Remote status from Eureka server");
-    DiscoveryClient discoveryClient = getDiscoveryClient();
-    if (discoveryClient != null && clientConfig.shouldFetchRegistry()) {
-      long lastFetch = discoveryClient.getLastSuccessfulRegistryFetchTimePeriod();
-
-      if (lastFetch < 0) {
-        status = new Status("UP",
-                "Eureka discovery client has not yet successfully connected to a Eureka server");
-      }
-      else if (lastFetch > clientConfig.getRegistryFetchIntervalSeconds() * 2000) {
-        status = new Status("UP",
-                "Eureka discovery client is reporting failures to connect to a Eureka server");
-      }
-    }
-
-    return status;
-  }
-
-  /**
-   * 得到实例信息健康
-   *
-   * @param instanceInfo 实例信息
-   * @param appResult 应用的结果
-   */
-  private void getInstanceInfoHealth(InstanceInfo instanceInfo,Map<String, Object> appResult) {
-    try {
-      RestTemplate restTemplate = new RestTemplate();
-      long startTime = System.currentTimeMillis();
-      ResponseEntity<EurekaHealth> responseEntity;
-      Status status;
-      if (instanceInfo.getAppName().equals(OPEN_API)){
-        responseEntity= restTemplate.getForEntity(instanceInfo.getHealthCheckUrl()
-                .replace("/actuator/health","/openApi/actuator/info"), EurekaHealth.class);
-        status =  responseEntity.getStatusCode()== HttpStatus.OK ?Status.UP : Status.DOWN;
-      }else {
-        //其他服务健康检查，可以集成特殊业务的判断
-        responseEntity
-                = restTemplate.getForEntity(instanceInfo.getHealthCheckUrl(), EurekaHealth.class);
-        EurekaHealth eurekaHealth = responseEntity.getBody();
-        status =  responseEntity.getStatusCode()== HttpStatus.OK &&
-                Objects.requireNonNull(eurekaHealth).getStatus().equals(Status.UP)?Status.UP : Status.DOWN;
-      }
-      long endTime = System.currentTimeMillis();
-      appResult.put(instanceInfo.getId()+"_TimeMs",endTime-startTime);
-      appResult.put(instanceInfo.getId()+"_Status",status.getCode());
-    }catch (Exception e) {
-        e.printStackTrace();
-    }
-  }
-
-  public  static class EurekaHealth {
-
-    private  Status status;
-
-    private  Map<String, Object> details;
-
-    public Status getStatus() {
-      return status;
-    }
-
-    public void setStatus(Status status) {
-      this.status = status;
-    }
-
-    public Map<String, Object> getDetails() {
-      return details;
-    }
-
-    public void setDetails(Map<String, Object> details) {
-      this.details = details;
-    }
-
-    public EurekaHealth(Status status, Map<String, Object> details) {
-      this.status = status;
-      this.details = details;
-    }
-
-    public EurekaHealth() {
-    }
-  }
-
-  /**
-   * 会发现客户端
-   *
-   * @return {@link DiscoveryClient}
-   */private DiscoveryClient getDiscoveryClient() {
-    DiscoveryClient discoveryClient = null;
-    if(AopUtils.isAopProxy(eurekaClient)) {
-      discoveryClient = ProxyUtils.getTargetObject(eurekaClient);
-    } else if(DiscoveryClient.class.isInstance(eurekaClient)) {
-      discoveryClient = (DiscoveryClient)eurekaClient;
-    }
-    return discoveryClient;
-  }
-}
+
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.discovery.DiscoveryClient;
+import com.netflix.discovery.EurekaClient;
+import com.netflix.discovery.EurekaClientConfig;
+import com.netflix.discovery.shared.Application;
+import com.netflix.discovery.shared.Applications;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.cloud.util.ProxyUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 尤里卡客户健康指示器
+ *
+ * @author xuhui
+ * @date 2022/03/15
+ */
+@HealthCost(HealthCostTier.FAN_OUT)
+public class EurekaClientHealthIndicator implements HealthIndicator, InitializingBean, DisposableBean,
+        MeterBinder, LatencyWindowAware {
+
+  @Qualifier("eurekaClient")
+  @Autowired
+  EurekaClient eurekaClient;
+  @Autowired
+  EurekaClientConfig clientConfig;
+
+
+  /**
+   * 并发探测的线程数上限
+   */
+  @Value("${eureka.client.health.concurrency:16}")
+  private int concurrency;
+
+  /**
+   * 单个实例探测的连接与读取超时，毫秒
+   */
+  @Value("${eureka.client.health.probe-timeout-ms:2000}")
+  private int probeTimeoutMs;
+
+  /**
+   * 一次健康检查的总截止时间，毫秒，超过后未返回的实例记为TIMEOUT
+   */
+  @Value("${eureka.client.health.deadline-ms:5000}")
+  private long deadlineMs;
+
+  /**
+   * 是否由后台维护的快照提供实例健康，关闭后每次健康检查都会探测全部实例
+   */
+  @Value("${eureka.client.health.snapshot.enabled:true}")
+  private boolean snapshotEnabled;
+
+  /**
+   * 快照中实例探测结果的有效期，毫秒
+   */
+  @Value("${eureka.client.health.snapshot.ttl-ms:60000}")
+  private long snapshotTtlMs;
+
+  /**
+   * 快照的定时刷新间隔，毫秒，注册表拉取完成时也会触发刷新
+   */
+  @Value("${eureka.client.health.snapshot.refresh-interval-ms:30000}")
+  private long snapshotRefreshIntervalMs;
+
+  /**
+   * 是否与同服务的其他副本分片探测，需要开启快照并暴露eurekashard端点
+   */
+  @Value("${eureka.client.health.sharding.enabled:false}")
+  private boolean shardingEnabled;
+
+  /**
+   * 耗时分位数的统计窗口，毫秒，探测器在 afterPropertiesSet 中创建，之前设置的窗口在创建时生效
+   */
+  private volatile long latencyWindowMs = TimeUnit.SECONDS.toMillis(60);
+
+  private final HealthProbeMetrics metrics = new HealthProbeMetrics("eureka");
+
+  private EurekaInstanceProber prober;
+
+  private EurekaHealthSnapshot snapshot;
+
+  private  static final String  CODE_SERVER = "WMP-ENGINE";
+
+  @Override
+  public void setLatencyWindowMs(long windowMs) {
+    this.latencyWindowMs = windowMs;
+    EurekaInstanceProber prober = this.prober;
+    if (prober != null) {
+      prober.getLatencyHistogram().setWindowMs(windowMs);
+    }
+  }
+
+  @Override
+  public void afterPropertiesSet() {
+    this.prober = new EurekaInstanceProber(concurrency, probeTimeoutMs, deadlineMs, metrics);
+    this.prober.getLatencyHistogram().setWindowMs(latencyWindowMs);
+    if (snapshotEnabled) {
+      this.snapshot = new EurekaHealthSnapshot(eurekaClient, prober, snapshotTtlMs, snapshotRefreshIntervalMs,
+              shardingEnabled);
+      this.snapshot.start();
+    }
+  }
+
+  @Override
+  public void destroy() {
+    if (this.snapshot != null) {
+      this.snapshot.stop();
+    }
+    this.prober.shutdown();
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    this.metrics.bindTo(registry);
+  }
+
+  /**
+   * 获取快照视图，未开启快照或尚未完成首次刷新时为null
+   *
+   * @return {@link EurekaHealthSnapshot.View}
+   */
+  EurekaHealthSnapshot.View getSnapshotView() {
+    return snapshot != null ? snapshot.getView() : null;
+  }
+
+  /**
+   * 健康检查
+   *
+   * @return {@link Health}
+   */@Override
+  public Health health() {
+    // 基础健康检查的逻辑
+    long startTime = System.currentTimeMillis();
+    long endTime = 0;
+    Status  satus =getStatus();
+
+    //关联服务的健康由后台快照维护，这里只读取
+    if (snapshot != null) {
+      EurekaHealthSnapshot.View view = snapshot.getView();
+      if (view == null) {
+        return new Health.Builder(satus).withDetail("servers", "initializing").build();
+      }
+      return new Health.Builder(satus).withDetail("timeMs", view.getRefreshTimeMs())
+      .withDetail("ageMs", System.currentTimeMillis() - view.getRefreshedAt())
+      .withDetail("latency", prober.getLatencyHistogram().toDetails())
+      .withDetail("servers",view.getServers()).build();
+    }
+
+    //判断关联服务是否正常
+    Applications applications = this.eurekaClient.getApplications();
+    if (applications == null) {
+      return new Health.Builder(Status.DOWN).build();
+    }
+    List<InstanceInfo> instances = new ArrayList<>();
+    for (Application application : applications.getRegisteredApplications()) {
+      instances.addAll(application.getInstances());
+    }
+    //并发探测全部实例，截止时间内未返回的记为TIMEOUT
+    Map<String, Object> result = buildServers(applications, prober.probeAll(instances));
+    prober.retainTargets(instances);
+    endTime = System.currentTimeMillis();
+    return new Health.Builder(satus).withDetail("timeMs", endTime - startTime)
+    .withDetail("latency", prober.getLatencyHistogram().toDetails())
+    .withDetail("servers",result).build();
+  }
+
+  /**
+   * 按应用汇总实例健康
+   *
+   * @param applications 注册表
+   * @param instanceHealths 以实例id为key的探测结果
+   * @return 以应用名为key的汇总结果
+   */
+  static Map<String, Object> buildServers(Applications applications,
+                                          Map<String, EurekaInstanceProber.InstanceHealth> instanceHealths) {
+    Map<String, Object> result = new HashMap<>();
+    for (Application application : applications.getRegisteredApplications()) {
+      if (!application.getInstances().isEmpty()) {
+
+        Map<String, Object> appResult = new HashMap<>();
+        appResult.put("total",application.getInstances().size());
+        for (InstanceInfo instanceInfo : application.getInstances()) {
+          //判断核心服务知否存在
+          putInstanceInfoHealth(instanceHealths.get(instanceInfo.getId()),appResult);
+        }
+        result.put(application.getName(), appResult);
+      }
+    }
+    if (!result.containsKey(CODE_SERVER)){
+      result.put(CODE_SERVER, Status.DOWN);
+    }
+    return result;
+  }
+
+  /**
+   * 获取服务状态
+   *
+   * @return {@link Status}
+   */
+  private Status getStatus() {
+    Status status = new Status(
+            this.eurekaClient.getInstanceRemoteStatus().toString(),
+            "Remote status from Eureka server");
+    DiscoveryClient discoveryClient = getDiscoveryClient();
+    if (discoveryClient != null && clientConfig.shouldFetchRegistry()) {
+      long lastFetch = discoveryClient.getLastSuccessfulRegistryFetchTimePeriod();
+
+      if (lastFetch < 0) {
+        status = new Status("UP",
+                "Eureka discovery client has not yet successfully connected to a Eureka server");
+      }
+      else if (lastFetch > clientConfig.getRegistryFetchIntervalSeconds() * 2000) {
+        status = new Status("UP",
+                "Eureka discovery client is reporting failures to connect to a Eureka server");
+      }
+    }
+
+    return status;
+  }
+
+  /**
+   * 写入实例信息健康
+   *
+   * @param instanceHealth 实例探测结果
+   * @param appResult 应用的结果
+   */
+  private static void putInstanceInfoHealth(EurekaInstanceProber.InstanceHealth instanceHealth,Map<String, Object> appResult) {
+    if (instanceHealth == null) {
+      return;
+    }
+    appResult.put(instanceHealth.getInstanceId()+"_TimeMs",instanceHealth.getTimeMs());
+    appResult.put(instanceHealth.getInstanceId()+"_Status",instanceHealth.getStatus());
+    if (instanceHealth.getError() != null) {
+      appResult.put(instanceHealth.getInstanceId()+"_Error",instanceHealth.getError());
+    }
+  }
+
+  public  static class EurekaHealth {
+
+    private  Status status;
+
+    private  Map<String, Object> details;
+
+    public Status getStatus() {
+      return status;
+    }
+
+    public void setStatus(Status status) {
+      this.status = status;
+    }
+
+    public Map<String, Object> getDetails() {
+      return details;
+    }
+
+    public void setDetails(Map<String, Object> details) {
+      this.details = details;
+    }
+
+    public EurekaHealth(Status status, Map<String, Object> details) {
+      this.status = status;
+      this.details = details;
+    }
+
+    public EurekaHealth() {
+    }
+  }
+
+  /**
+   * 会发现客户端
+   *
+   * @return {@link DiscoveryClient}
+   */private DiscoveryClient getDiscoveryClient() {
+    DiscoveryClient discoveryClient = null;
+    if(AopUtils.isAopProxy(eurekaClient)) {
+      discoveryClient = ProxyUtils.getTargetObject(eurekaClient);
+    } else if(DiscoveryClient.class.isInstance(eurekaClient)) {
+      discoveryClient = (DiscoveryClient)eurekaClient;
+    }
+    return discoveryClient;
+  }
+}
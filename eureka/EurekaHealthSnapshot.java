@@ -0,0 +1,313 @@
+
+import com.netflix.appinfo.ApplicationInfoManager;
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.discovery.CacheRefreshedEvent;
+import com.netflix.discovery.EurekaClient;
+import com.netflix.discovery.EurekaEvent;
+import com.netflix.discovery.EurekaEventListener;
+import com.netflix.discovery.shared.Application;
+import com.netflix.discovery.shared.Applications;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 尤里卡实例健康快照
+ * 由后台线程维护，以实例id为key缓存探测结果，
+ * 每次eureka客户端拉取注册表(CacheRefreshedEvent)或定时触发时，
+ * 只重新探测新增、发生变更(lastDirtyTimestamp变化)或结果已过期的实例，并剔除已下线的实例，
+ * 健康检查只读取已汇总好的视图，耗时与注册表大小无关
+ * 开启分片后，只探测按一致性哈希归属于本副本的实例，其余实例从负责的副本读取，
+ * 读取失败时由本副本兜底探测
+ *
+ * @see EurekaClientHealthIndicator
+ * @see EurekaInstanceProber
+ * @see EurekaProbeSharding
+ */
+@Slf4j
+public class EurekaHealthSnapshot implements EurekaEventListener {
+
+  private final EurekaClient eurekaClient;
+
+  private final EurekaInstanceProber prober;
+
+  private final long ttlMs;
+
+  private final long refreshIntervalMs;
+
+  private final boolean sharding;
+
+  /**
+   * 只在刷新线程中读写
+   */
+  private final Map<String, Entry> entries = new HashMap<>();
+
+  private final ScheduledExecutorService scheduler =
+          Executors.newSingleThreadScheduledExecutor(ConcurrentProbes.daemonThreadFactory("eureka-health-snapshot"));
+
+  private final AtomicBoolean refreshPending = new AtomicBoolean();
+
+  private volatile View view;
+
+  /**
+   * 创建快照
+   *
+   * @param eurekaClient      尤里卡客户端
+   * @param prober            实例探测器
+   * @param ttlMs             探测结果的有效期，毫秒，过期后重新探测
+   * @param refreshIntervalMs 定时刷新间隔，毫秒
+   * @param sharding          是否与同服务的其他副本分片探测
+   */
+  public EurekaHealthSnapshot(EurekaClient eurekaClient, EurekaInstanceProber prober, long ttlMs,
+                              long refreshIntervalMs, boolean sharding) {
+    this.eurekaClient = eurekaClient;
+    this.prober = prober;
+    this.ttlMs = ttlMs;
+    this.refreshIntervalMs = refreshIntervalMs;
+    this.sharding = sharding;
+  }
+
+  /**
+   * 注册注册表刷新事件并开始定时刷新
+   */
+  public void start() {
+    eurekaClient.registerEventListener(this);
+    scheduler.scheduleWithFixedDelay(this::refresh, 0, refreshIntervalMs, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * 停止刷新
+   */
+  public void stop() {
+    eurekaClient.unregisterEventListener(this);
+    scheduler.shutdownNow();
+  }
+
+  @Override
+  public void onEvent(EurekaEvent event) {
+    if (event instanceof CacheRefreshedEvent && refreshPending.compareAndSet(false, true)) {
+      scheduler.execute(this::refresh);
+    }
+  }
+
+  /**
+   * 获取最近一次汇总的视图，尚未完成首次刷新时为null
+   *
+   * @return {@link View}
+   */
+  public View getView() {
+    return view;
+  }
+
+  private void refresh() {
+    refreshPending.set(false);
+    try {
+      doRefresh();
+    } catch (Throwable t) {
+      log.warn("Eureka health snapshot refresh failed", t);
+    }
+  }
+
+  private void doRefresh() {
+    Applications applications = eurekaClient.getApplications();
+    if (applications == null) {
+      return;
+    }
+    long startTime = System.currentTimeMillis();
+    EurekaProbeSharding probeSharding = sharding ? newSharding(applications) : null;
+    Set<String> registered = new HashSet<>();
+    List<InstanceInfo> registeredInstances = new ArrayList<>();
+    List<InstanceInfo> dirty = new ArrayList<>();
+    Map<String, InstanceInfo> owners = new HashMap<>();
+    for (Application application : applications.getRegisteredApplications()) {
+      for (InstanceInfo instanceInfo : application.getInstances()) {
+        registered.add(instanceInfo.getId());
+        registeredInstances.add(instanceInfo);
+        if (probeSharding != null) {
+          owners.put(instanceInfo.getId(), probeSharding.ownerOf(instanceInfo.getId()));
+        }
+        Entry entry = entries.get(instanceInfo.getId());
+        if (entry == null
+                || !Objects.equals(entry.lastDirtyTimestamp, instanceInfo.getLastDirtyTimestamp())
+                || startTime - entry.probedAt > ttlMs) {
+          dirty.add(instanceInfo);
+        }
+      }
+    }
+    // 剔除已经离开注册表的实例及其指标
+    entries.keySet().retainAll(registered);
+    prober.retainTargets(registeredInstances);
+
+    List<InstanceInfo> toProbe = dirty;
+    if (probeSharding != null && !dirty.isEmpty()) {
+      toProbe = readPeerShards(probeSharding, owners, dirty, startTime);
+    }
+    if (!toProbe.isEmpty()) {
+      Map<String, EurekaInstanceProber.InstanceHealth> probed = prober.probeAll(toProbe);
+      long probedAt = System.currentTimeMillis();
+      for (InstanceInfo instanceInfo : toProbe) {
+        EurekaInstanceProber.InstanceHealth instanceHealth = probed.get(instanceInfo.getId());
+        if (instanceHealth != null) {
+          entries.put(instanceInfo.getId(), new Entry(instanceHealth, instanceInfo.getLastDirtyTimestamp(), probedAt));
+        }
+      }
+    }
+
+    Map<String, EurekaInstanceProber.InstanceHealth> instanceHealths = new HashMap<>(entries.size() * 2);
+    Map<String, Map<String, Object>> owned = new LinkedHashMap<>();
+    entries.forEach((id, entry) -> {
+      instanceHealths.put(id, entry.health);
+      InstanceInfo owner = owners.get(id);
+      if (owner != null && probeSharding.isSelf(owner)) {
+        owned.put(id, toShardResult(entry));
+      }
+    });
+    long endTime = System.currentTimeMillis();
+    this.view = new View(EurekaClientHealthIndicator.buildServers(applications, instanceHealths), owned,
+            toProbe.size(), endTime, endTime - startTime);
+  }
+
+  private EurekaProbeSharding newSharding(Applications applications) {
+    ApplicationInfoManager applicationInfoManager = eurekaClient.getApplicationInfoManager();
+    InstanceInfo self = applicationInfoManager.getInfo();
+    return new EurekaProbeSharding(self, applications.getRegisteredApplications(self.getAppName()));
+  }
+
+  /**
+   * 从负责的副本读取不归属本副本的实例结果
+   *
+   * @return 仍需本副本探测的实例，包括归属本副本的实例和从副本读取失败或结果已过期的实例
+   */
+  private List<InstanceInfo> readPeerShards(EurekaProbeSharding probeSharding, Map<String, InstanceInfo> owners,
+                                            List<InstanceInfo> dirty, long now) {
+    List<InstanceInfo> toProbe = new ArrayList<>();
+    Map<String, InstanceInfo> peers = new LinkedHashMap<>();
+    for (InstanceInfo instanceInfo : dirty) {
+      InstanceInfo owner = owners.get(instanceInfo.getId());
+      if (probeSharding.isSelf(owner)) {
+        toProbe.add(instanceInfo);
+      } else {
+        peers.put(owner.getId(), owner);
+      }
+    }
+    if (peers.isEmpty()) {
+      return toProbe;
+    }
+    Map<String, Map<String, Map<String, Object>>> shards = prober.fetchShards(peers.values());
+    for (InstanceInfo instanceInfo : dirty) {
+      InstanceInfo owner = owners.get(instanceInfo.getId());
+      if (probeSharding.isSelf(owner)) {
+        continue;
+      }
+      Map<String, Map<String, Object>> shard = shards.get(owner.getId());
+      Entry entry = shard != null ? fromShardResult(instanceInfo, shard.get(instanceInfo.getId())) : null;
+      if (entry != null && now - entry.probedAt <= ttlMs) {
+        entries.put(instanceInfo.getId(), entry);
+      } else {
+        // 负责的副本不可达或尚未探测，本副本兜底
+        toProbe.add(instanceInfo);
+      }
+    }
+    return toProbe;
+  }
+
+  private static Map<String, Object> toShardResult(Entry entry) {
+    Map<String, Object> result = new LinkedHashMap<>();
+    result.put("status", entry.health.getStatus());
+    result.put("timeMs", entry.health.getTimeMs());
+    result.put("probedAt", entry.probedAt);
+    if (entry.health.getError() != null) {
+      result.put("error", entry.health.getError());
+    }
+    return result;
+  }
+
+  private static Entry fromShardResult(InstanceInfo instanceInfo, Map<String, Object> result) {
+    if (result == null || !(result.get("status") instanceof String) || !(result.get("probedAt") instanceof Number)) {
+      return null;
+    }
+    Object timeMs = result.get("timeMs");
+    Object error = result.get("error");
+    EurekaInstanceProber.InstanceHealth health = new EurekaInstanceProber.InstanceHealth(instanceInfo.getAppName(),
+            instanceInfo.getId(), (String) result.get("status"),
+            timeMs instanceof Number ? ((Number) timeMs).longValue() : 0L, error != null ? error.toString() : null);
+    return new Entry(health, instanceInfo.getLastDirtyTimestamp(), ((Number) result.get("probedAt")).longValue());
+  }
+
+  private static class Entry {
+
+    private final EurekaInstanceProber.InstanceHealth health;
+
+    private final Long lastDirtyTimestamp;
+
+    private final long probedAt;
+
+    private Entry(EurekaInstanceProber.InstanceHealth health, Long lastDirtyTimestamp, long probedAt) {
+      this.health = health;
+      this.lastDirtyTimestamp = lastDirtyTimestamp;
+      this.probedAt = probedAt;
+    }
+  }
+
+  /**
+   * 一次刷新后汇总好的不可变视图
+   */
+  public static class View {
+
+    private final Map<String, Object> servers;
+
+    private final Map<String, Map<String, Object>> owned;
+
+    private final int probed;
+
+    private final long refreshedAt;
+
+    private final long refreshTimeMs;
+
+    private View(Map<String, Object> servers, Map<String, Map<String, Object>> owned, int probed,
+                 long refreshedAt, long refreshTimeMs) {
+      this.servers = Collections.unmodifiableMap(servers);
+      this.owned = Collections.unmodifiableMap(owned);
+      this.probed = probed;
+      this.refreshedAt = refreshedAt;
+      this.refreshTimeMs = refreshTimeMs;
+    }
+
+    public Map<String, Object> getServers() {
+      return servers;
+    }
+
+    /**
+     * 分片模式下归属本副本的实例结果，供其他副本读取
+     *
+     * @return 以实例id为key的探测结果
+     */
+    public Map<String, Map<String, Object>> getOwned() {
+      return owned;
+    }
+
+    public int getProbed() {
+      return probed;
+    }
+
+    public long getRefreshedAt() {
+      return refreshedAt;
+    }
+
+    public long getRefreshTimeMs() {
+      return refreshTimeMs;
+    }
+  }
+}
@@ -0,0 +1,211 @@
+
+import com.netflix.appinfo.InstanceInfo;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 尤里卡实例探测器
+ * 在有界线程池中并发探测实例的健康检查地址，每次探测有独立的连接/读取超时，
+ * 整批探测共享一个截止时间，截止时仍未返回的实例记为TIMEOUT
+ *
+ * @see EurekaClientHealthIndicator
+ * @see ConcurrentProbes
+ */
+public class EurekaInstanceProber {
+
+  private static final String OPEN_API = "WMP-API";
+
+  private static final String SHARD_PATH = "/actuator/eurekashard";
+
+  private final RestTemplate restTemplate;
+
+  private final ExecutorService executor;
+
+  private final long deadlineMs;
+
+  private final LatencyHistogram latencyHistogram = new LatencyHistogram();
+
+  private final HealthProbeMetrics metrics;
+
+  /**
+   * 创建探测器
+   *
+   * @param concurrency    并发上限
+   * @param probeTimeoutMs 单次探测的连接与读取超时，毫秒
+   * @param deadlineMs     整批探测的截止时间，毫秒
+   * @param metrics        探测指标，以 应用名/实例id 作为target
+   */
+  public EurekaInstanceProber(int concurrency, int probeTimeoutMs, long deadlineMs, HealthProbeMetrics metrics) {
+    SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+    requestFactory.setConnectTimeout(probeTimeoutMs);
+    requestFactory.setReadTimeout(probeTimeoutMs);
+    this.restTemplate = new RestTemplate(requestFactory);
+    this.executor = ConcurrentProbes.newExecutor("eureka-health", concurrency);
+    this.deadlineMs = deadlineMs;
+    this.metrics = metrics;
+  }
+
+  /**
+   * 并发探测全部实例
+   *
+   * @param instances 实例
+   * @return 以实例id为key的探测结果
+   */
+  public Map<String, InstanceHealth> probeAll(Collection<InstanceInfo> instances) {
+    Map<InstanceInfo, Callable<Status>> tasks = new LinkedHashMap<>(instances.size() * 2);
+    for (InstanceInfo instanceInfo : instances) {
+      tasks.put(instanceInfo, () -> probe(instanceInfo));
+    }
+    Map<String, InstanceHealth> result = new LinkedHashMap<>(instances.size() * 2);
+    ConcurrentProbes.invokeAll(executor, tasks, deadlineMs).forEach((instanceInfo, probeResult) -> {
+      latencyHistogram.record(probeResult.getElapsedNanos());
+      String status;
+      String error = null;
+      if (probeResult.isTimedOut()) {
+        status = HealthStatuses.TIMEOUT.getCode();
+      } else if (probeResult.isSuccess()) {
+        status = probeResult.getValue().getCode();
+      } else {
+        status = Status.DOWN.getCode();
+        error = probeResult.getError().getMessage();
+      }
+      metrics.record(targetOf(instanceInfo), probeResult.getElapsedNanos(),
+              new Status(status));
+      result.put(instanceInfo.getId(), new InstanceHealth(instanceInfo.getAppName(), instanceInfo.getId(),
+              status, probeResult.getElapsedMs(), error));
+    });
+    return result;
+  }
+
+  /**
+   * 只保留仍在注册表中的实例的指标，已下线实例的指标随之移除
+   *
+   * @param instances 注册表中的全部实例
+   */
+  public void retainTargets(Collection<InstanceInfo> instances) {
+    Set<String> targets = new HashSet<>(instances.size() * 2);
+    for (InstanceInfo instanceInfo : instances) {
+      targets.add(targetOf(instanceInfo));
+    }
+    metrics.retainTargets(targets);
+  }
+
+  private static String targetOf(InstanceInfo instanceInfo) {
+    return instanceInfo.getAppName() + "/" + instanceInfo.getId();
+  }
+
+  /**
+   * 并发读取其他副本负责的探测结果，读取失败或超时的副本不出现在结果中
+   *
+   * @param peers 同服务的其他副本
+   * @return 以副本实例id为key，其分片结果为value
+   */
+  @SuppressWarnings("unchecked")
+  public Map<String, Map<String, Map<String, Object>>> fetchShards(Collection<InstanceInfo> peers) {
+    Map<InstanceInfo, Callable<Map<String, Map<String, Object>>>> tasks = new LinkedHashMap<>(peers.size() * 2);
+    for (InstanceInfo peer : peers) {
+      tasks.put(peer, () -> restTemplate.getForObject(peer.getHealthCheckUrl()
+              .replace("/actuator/health", SHARD_PATH), Map.class));
+    }
+    Map<String, Map<String, Map<String, Object>>> result = new LinkedHashMap<>(peers.size() * 2);
+    ConcurrentProbes.invokeAll(executor, tasks, deadlineMs).forEach((peer, probeResult) -> {
+      if (probeResult.isSuccess() && probeResult.getValue() != null) {
+        result.put(peer.getId(), probeResult.getValue());
+      }
+    });
+    return result;
+  }
+
+  /**
+   * 探测单个实例
+   *
+   * @param instanceInfo 实例信息
+   * @return {@link Status}
+   */
+  private Status probe(InstanceInfo instanceInfo) {
+    ResponseEntity<EurekaClientHealthIndicator.EurekaHealth> responseEntity;
+    if (instanceInfo.getAppName().equals(OPEN_API)){
+      responseEntity= restTemplate.getForEntity(instanceInfo.getHealthCheckUrl()
+              .replace("/actuator/health","/openApi/actuator/info"), EurekaClientHealthIndicator.EurekaHealth.class);
+      return responseEntity.getStatusCode()== HttpStatus.OK ?Status.UP : Status.DOWN;
+    }
+    //其他服务健康检查，可以集成特殊业务的判断
+    responseEntity
+            = restTemplate.getForEntity(instanceInfo.getHealthCheckUrl(), EurekaClientHealthIndicator.EurekaHealth.class);
+    EurekaClientHealthIndicator.EurekaHealth eurekaHealth = responseEntity.getBody();
+    return responseEntity.getStatusCode()== HttpStatus.OK &&
+            Objects.requireNonNull(eurekaHealth).getStatus().equals(Status.UP)?Status.UP : Status.DOWN;
+  }
+
+  /**
+   * 全部实例探测的耗时直方图
+   *
+   * @return {@link LatencyHistogram}
+   */
+  public LatencyHistogram getLatencyHistogram() {
+    return latencyHistogram;
+  }
+
+  /**
+   * 关闭探测线程池
+   */
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * 单个实例的探测结果
+   */
+  public static class InstanceHealth {
+
+    private final String appName;
+
+    private final String instanceId;
+
+    private final String status;
+
+    private final long timeMs;
+
+    private final String error;
+
+    public InstanceHealth(String appName, String instanceId, String status, long timeMs, String error) {
+      this.appName = appName;
+      this.instanceId = instanceId;
+      this.status = status;
+      this.timeMs = timeMs;
+      this.error = error;
+    }
+
+    public String getAppName() {
+      return appName;
+    }
+
+    public String getInstanceId() {
+      return instanceId;
+    }
+
+    public String getStatus() {
+      return status;
+    }
+
+    public long getTimeMs() {
+      return timeMs;
+    }
+
+    public String getError() {
+      return error;
+    }
+  }
+}
@@ -0,0 +1,78 @@
+
+import com.google.common.hash.Hashing;
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.discovery.shared.Application;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 尤里卡探测分片
+ * 基于本服务自身在注册表中的全部实例做最高随机权重(rendezvous)一致性哈希，
+ * 每个目标实例只归属一个副本，由该副本负责探测，其他副本读取其结果，
+ * 副本离开注册表后其负责的实例自动分摊给其余副本
+ *
+ * @see EurekaHealthSnapshot
+ */
+public class EurekaProbeSharding {
+
+  private final String selfId;
+
+  private final List<InstanceInfo> peers;
+
+  /**
+   * 创建分片视图
+   *
+   * @param self        自身实例
+   * @param application 自身所属的应用，可以为null
+   */
+  public EurekaProbeSharding(InstanceInfo self, Application application) {
+    this.selfId = self.getId();
+    List<InstanceInfo> peers = new ArrayList<>();
+    peers.add(self);
+    if (application != null) {
+      for (InstanceInfo instanceInfo : application.getInstances()) {
+        if (!selfId.equals(instanceInfo.getId()) && instanceInfo.getStatus() == InstanceInfo.InstanceStatus.UP) {
+          peers.add(instanceInfo);
+        }
+      }
+    }
+    this.peers = Collections.unmodifiableList(peers);
+  }
+
+  /**
+   * 计算目标实例归属的副本
+   *
+   * @param targetId 目标实例id
+   * @return 负责探测的副本
+   */
+  public InstanceInfo ownerOf(String targetId) {
+    InstanceInfo owner = null;
+    long max = Long.MIN_VALUE;
+    for (InstanceInfo peer : peers) {
+      long weight = Hashing.murmur3_128()
+              .hashString(peer.getId() + "|" + targetId, StandardCharsets.UTF_8).asLong();
+      if (owner == null || weight > max) {
+        owner = peer;
+        max = weight;
+      }
+    }
+    return owner;
+  }
+
+  /**
+   * 判断副本是否为自身
+   *
+   * @param peer 副本
+   * @return 是否为自身
+   */
+  public boolean isSelf(InstanceInfo peer) {
+    return selfId.equals(peer.getId());
+  }
+
+  public int getPeerCount() {
+    return peers.size();
+  }
+}
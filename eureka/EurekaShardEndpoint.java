@@ -0,0 +1,35 @@
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * 尤里卡探测分片端点
+ * 向同服务的其他副本暴露本副本负责探测的实例结果，路径为 /actuator/eurekashard，
+ * 开启分片时需要将其加入 management.endpoints.web.exposure.include
+ *
+ * @see EurekaProbeSharding
+ * @see DefaultEurekaClientConfig
+ */
+@Endpoint(id = "eurekashard")
+public class EurekaShardEndpoint {
+
+  private final EurekaClientHealthIndicator healthIndicator;
+
+  public EurekaShardEndpoint(EurekaClientHealthIndicator healthIndicator) {
+    this.healthIndicator = healthIndicator;
+  }
+
+  /**
+   * 本副本负责的实例结果
+   *
+   * @return 以实例id为key的探测结果
+   */
+  @ReadOperation
+  public Map<String, Map<String, Object>> shard() {
+    EurekaHealthSnapshot.View view = healthIndicator.getSnapshotView();
+    return view != null ? view.getOwned() : Collections.emptyMap();
+  }
+}
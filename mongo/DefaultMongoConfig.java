@@ -1,10 +1,22 @@
-import org.springframework.context.annotation.Bean;
-
-public class DefaultMongoConfig {
-
-    @Bean
-    public MongoHealthIndicator dubboHealthIndicator(MongoTemplate mongoTemplate) {
-        return new MongoHealthIndicator(mongoTemplate);
-    }
-
-}
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+
+@Import(LatencyWindowPostProcessor.class)
+public class DefaultMongoConfig {
+
+    @Bean
+    @ConditionalOnProperty(value = "management.health.reactive.enabled", havingValue = "false", matchIfMissing = true)
+    public MongoHealthIndicator mongoHealthIndicator(MongoTemplate mongoTemplate) {
+        return new MongoHealthIndicator(mongoTemplate);
+    }
+
+    @Bean("mongoHealthIndicator")
+    @ConditionalOnProperty(value = "management.health.reactive.enabled", havingValue = "true")
+    public ReactiveMongoHealthIndicator reactiveMongoHealthIndicator(ReactiveMongoTemplate reactiveMongoTemplate) {
+        return new ReactiveMongoHealthIndicator(reactiveMongoTemplate);
+    }
+
+}
@@ -1,49 +1,242 @@
-import org.bson.Document;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.boot.actuate.health.AbstractHealthIndicator;
-import org.springframework.boot.actuate.health.Health.Builder;
-import org.springframework.data.mongodb.core.MongoTemplate;
-import org.springframework.util.Assert;
-
-/**
- * mongodb的健康检查器
- * 重构自 org.springframework.boot.actuate.mongo.MongoHealthIndicator
- * 增加真实调用与耗时统计
- * 将该类注册到spring中时，bean name命名为mongoHealthIndicator，即可替代默认实现
- *
- * @see org.springframework.boot.actuate.mongo.MongoHealthIndicator
- * @see DefaultRedisConfig
- */
-public class MongoHealthIndicator extends AbstractHealthIndicator {
-
-    private final MongoTemplate mongoTemplate;
-
-    /**
-     * 查询的collection名称，根据实际修改
-     */
-    @Value("${spring.data.mongodb.health.collection:request_log}")
-    private String collectionName;
-
-    public MongoHealthIndicator(MongoTemplate mongoTemplate) {
-        super("MongoDB health check failed");
-        Assert.notNull(mongoTemplate, "MongoTemplate must not be null");
-        this.mongoTemplate = mongoTemplate;
-    }
-
-    @Override
-    public void doHealthCheck(Builder builder) {
-        try {
-            long startTime = System.currentTimeMillis();
-            long result = this.mongoTemplate.getCollection(collectionName).count();
-            long endTime = System.currentTimeMillis();
-            builder.withDetail("result", result >= 0 ? "yes" : "no");
-            builder.withDetail("timeMs", endTime - startTime);
-            Document buildInfoResult = this.mongoTemplate.executeCommand("{ buildInfo: 1 }");
-            builder.withDetail("version", buildInfoResult.getString("version"));
-            builder.up();
-        } catch (Exception e) {
-            builder.down(e);
-        }
-
-    }
-}
+import com.mongodb.client.MongoClient;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.bson.Document;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health.Builder;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * mongodb的健康检查器
+ * 重构自 org.springframework.boot.actuate.mongo.MongoHealthIndicator
+ * 增加真实调用与耗时统计
+ * 默认只发送ping命令，耗时与集合大小无关，也可以选择读取元数据中的文档数或原来的集合计数；buildInfo 只执行一次
+ * 副本集上与探测同时执行 replSetGetStatus，给出每个成员的状态、往返耗时与复制落后，从节点落后过多时为DEGRADED
+ * 将该类注册到spring中时，bean name命名为mongoHealthIndicator，即可替代默认实现
+ *
+ * @see org.springframework.boot.actuate.mongo.MongoHealthIndicator
+ * @see DefaultRedisConfig
+ */
+@HealthCost(HealthCostTier.SINGLE_ROUND_TRIP)
+public class MongoHealthIndicator extends AbstractHealthIndicator implements MeterBinder, DisposableBean,
+    LatencyWindowAware {
+
+    private static final String PROBE_PING = "ping";
+
+    private static final String PROBE_ESTIMATED = "estimated";
+
+    private static final String PROBE_COUNT = "count";
+
+    private static final Document PING = new Document("ping", 1);
+
+    private static final Document BUILD_INFO = new Document("buildInfo", 1);
+
+    private final MongoTemplate mongoTemplate;
+
+    /**
+     * 查询的collection名称，根据实际修改
+     */
+    @Value("${spring.data.mongodb.health.collection:request_log}")
+    private String collectionName;
+
+    /**
+     * 探测方式：ping 只发送ping命令；estimated 读取集合元数据中的文档数；count 为原来的集合计数，
+     * 前两者的耗时与数据量无关
+     */
+    @Value("${spring.data.mongodb.health.probe:ping}")
+    private String probe = PROBE_PING;
+
+    /**
+     * 缓存的服务端版本，探测失败后重新读取
+     */
+    private volatile String version;
+
+    /**
+     * 为true时同时执行 replSetGetStatus，给出每个成员的状态、延迟与复制落后
+     */
+    @Value("${spring.data.mongodb.health.replica-set.enabled:true}")
+    private boolean replicaSetEnabled = true;
+
+    /**
+     * replSetGetStatus 与探测共用的截止时间，毫秒
+     */
+    @Value("${spring.data.mongodb.health.replica-set.deadline-ms:2000}")
+    private long replicaSetDeadlineMs = 2000;
+
+    /**
+     * 从节点落后主节点超过该值时记为DEGRADED，秒
+     */
+    @Value("${spring.data.mongodb.health.replica-set.max-lag-seconds:10}")
+    private long replicaSetMaxLagSeconds = 10;
+
+    /**
+     * 用于读取驱动持续测量的各成员往返耗时，可以不存在
+     */
+    @Autowired(required = false)
+    private MongoClient mongoClient;
+
+    private volatile ExecutorService executor;
+
+    /**
+     * 最近一次提交的 replSetGetStatus，未完成时后续检查继续等待它，不重复提交
+     */
+    private Future<Document> pendingReplicaSetStatus;
+
+    private final LatencyHistogram latencyHistogram = new LatencyHistogram();
+
+    private final HealthProbeMetrics metrics = new HealthProbeMetrics("mongo");
+
+    @Override
+    public void setLatencyWindowMs(long windowMs) {
+        this.latencyHistogram.setWindowMs(windowMs);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.metrics.bindTo(registry);
+    }
+
+    public MongoHealthIndicator(MongoTemplate mongoTemplate) {
+        super("MongoDB health check failed");
+        Assert.notNull(mongoTemplate, "MongoTemplate must not be null");
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public void doHealthCheck(Builder builder) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(replicaSetDeadlineMs);
+        Future<Document> replicaSetStatus = replicaSetEnabled ? submitReplicaSetStatus() : null;
+        boolean up = false;
+        try {
+            long startTime = System.nanoTime();
+            boolean success = false;
+            boolean result;
+            try {
+                result = doProbe();
+                success = true;
+            } finally {
+                long elapsed = System.nanoTime() - startTime;
+                latencyHistogram.record(elapsed);
+                metrics.record(elapsed, success ? Status.UP : Status.DOWN);
+                builder.withDetail("timeMs", TimeUnit.NANOSECONDS.toMillis(elapsed));
+                builder.withDetail("latency", latencyHistogram.toDetails());
+            }
+            builder.withDetail("probe", probe);
+            builder.withDetail("result", result ? "yes" : "no");
+            builder.withDetail("version", getVersion());
+            builder.up();
+            up = true;
+        } catch (Exception e) {
+            this.version = null;
+            builder.down(e);
+        }
+        if (replicaSetStatus != null) {
+            doReplicaSetCheck(builder, replicaSetStatus, deadline, up);
+        }
+    }
+
+    /**
+     * 提交 replSetGetStatus，上一次提交的仍未完成(例如成员无响应)时复用它，线程池中最多只有一个在执行
+     */
+    private synchronized Future<Document> submitReplicaSetStatus() {
+        Future<Document> pending = this.pendingReplicaSetStatus;
+        if (pending == null || pending.isDone()) {
+            pending = getExecutor().submit(this::getReplicaSetStatus);
+            this.pendingReplicaSetStatus = pending;
+        }
+        return pending;
+    }
+
+    private Document getReplicaSetStatus() {
+        return this.mongoTemplate.getMongoDatabaseFactory().getMongoDatabase(MongoReplicaSetStatus.ADMIN_DATABASE)
+            .runCommand(MongoReplicaSetStatus.COMMAND);
+    }
+
+    /**
+     * 等待 replSetGetStatus 的结果，给出每个成员的状态、往返耗时与落后主节点的秒数
+     * 没有主节点时为DOWN，有成员不可用或从节点落后过多时为DEGRADED；
+     * 非副本集或缺少clusterMonitor权限时只记录原因
+     */
+    private void doReplicaSetCheck(Builder builder, Future<Document> replicaSetStatus, long deadline, boolean up) {
+        Document status;
+        try {
+            status = replicaSetStatus.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            // 不取消，由下一次检查继续等待
+            builder.withDetail("replicaSet", HealthStatuses.TIMEOUT.getCode());
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (MongoReplicaSetStatus.isStandalone(cause)) {
+                builder.withDetail("replicaSet", "standalone");
+            } else {
+                builder.withDetail("replicaSet", "unavailable: " + cause.getMessage());
+            }
+            return;
+        }
+
+        MongoReplicaSetStatus.apply(builder, status,
+            MongoReplicaSetStatus.getRoundTripNanos(mongoClient != null ? mongoClient.getClusterDescription() : null),
+            replicaSetMaxLagSeconds, up);
+    }
+
+    private ExecutorService getExecutor() {
+        ExecutorService executor = this.executor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = this.executor;
+                if (executor == null) {
+                    executor = ConcurrentProbes.newExecutor("health-mongo", 2);
+                    this.executor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    @Override
+    public void destroy() {
+        ExecutorService executor = this.executor;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private boolean doProbe() {
+        switch (probe) {
+            case PROBE_ESTIMATED:
+                return this.mongoTemplate.getCollection(collectionName).estimatedDocumentCount() >= 0;
+            case PROBE_COUNT:
+                return this.mongoTemplate.getCollection(collectionName).count() >= 0;
+            default:
+                Object ok = this.mongoTemplate.executeCommand(PING).get("ok");
+                return ok instanceof Number && ((Number) ok).intValue() == 1;
+        }
+    }
+
+    /**
+     * buildInfo 只在首次或探测失败后重新执行
+     */
+    private String getVersion() {
+        String version = this.version;
+        if (version == null) {
+            version = this.mongoTemplate.executeCommand(BUILD_INFO).getString("version");
+            this.version = version;
+        }
+        return version;
+    }
+}
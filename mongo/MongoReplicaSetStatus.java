@@ -0,0 +1,125 @@
+import com.mongodb.MongoCommandException;
+import com.mongodb.connection.ClusterDescription;
+import com.mongodb.connection.ServerDescription;
+import org.bson.Document;
+import org.springframework.boot.actuate.health.Health.Builder;
+import org.springframework.boot.actuate.health.Status;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * replSetGetStatus 结果的解析，阻塞与响应式的mongodb健康检查器共用
+ * 给出每个成员的状态、往返耗时与落后主节点的秒数，没有主节点时为DOWN，有成员不可用或从节点落后过多时为DEGRADED
+ *
+ * @see MongoHealthIndicator
+ * @see ReactiveMongoHealthIndicator
+ */
+final class MongoReplicaSetStatus {
+
+    static final Document COMMAND = new Document("replSetGetStatus", 1);
+
+    static final String ADMIN_DATABASE = "admin";
+
+    /**
+     * 非副本集上执行 replSetGetStatus 的错误码
+     */
+    private static final int NO_REPLICATION_ENABLED = 76;
+
+    private static final String PRIMARY = "PRIMARY";
+
+    private static final String SECONDARY = "SECONDARY";
+
+    private static final String ARBITER = "ARBITER";
+
+    private MongoReplicaSetStatus() {
+    }
+
+    /**
+     * @param error 执行 replSetGetStatus 的异常
+     * @return 是否因为不是副本集而失败
+     */
+    static boolean isStandalone(Throwable error) {
+        return error instanceof MongoCommandException
+            && ((MongoCommandException) error).getErrorCode() == NO_REPLICATION_ENABLED;
+    }
+
+    /**
+     * 将 replSetGetStatus 的结果写入健康信息
+     *
+     * @param builder       健康信息
+     * @param status        replSetGetStatus 的结果
+     * @param roundTrips    以host:port为key的往返耗时，纳秒
+     * @param maxLagSeconds 从节点允许落后的秒数
+     * @param up            探测本身是否成功，失败时不再改变状态
+     */
+    static void apply(Builder builder, Document status, Map<String, Long> roundTrips, long maxLagSeconds,
+                      boolean up) {
+        List<Document> members = status.getList("members", Document.class, Collections.emptyList());
+        Date primaryOptime = null;
+        for (Document member : members) {
+            if (PRIMARY.equals(member.getString("stateStr"))) {
+                primaryOptime = member.getDate("optimeDate");
+            }
+        }
+        Map<String, Object> memberDetails = new LinkedHashMap<>();
+        boolean degraded = false;
+        for (Document member : members) {
+            String name = member.getString("name");
+            String state = member.getString("stateStr");
+            Map<String, Object> memberDetail = new LinkedHashMap<>();
+            memberDetail.put("state", state);
+            Object pingMs = member.get("pingMs");
+            if (pingMs != null) {
+                memberDetail.put("pingMs", pingMs);
+            }
+            Long roundTrip = roundTrips.get(name);
+            if (roundTrip != null) {
+                memberDetail.put("rttMs", TimeUnit.NANOSECONDS.toMillis(roundTrip));
+            }
+            Object health = member.get("health");
+            boolean healthy = !(health instanceof Number && ((Number) health).intValue() == 0)
+                && (PRIMARY.equals(state) || SECONDARY.equals(state) || ARBITER.equals(state));
+            Date optime = member.getDate("optimeDate");
+            if (SECONDARY.equals(state) && primaryOptime != null && optime != null) {
+                long lagSeconds = Math.max(0,
+                    TimeUnit.MILLISECONDS.toSeconds(primaryOptime.getTime() - optime.getTime()));
+                memberDetail.put("lagSeconds", lagSeconds);
+                healthy &= lagSeconds <= maxLagSeconds;
+            }
+            memberDetail.put("status", healthy ? Status.UP.getCode() : HealthStatuses.DEGRADED.getCode());
+            degraded |= !healthy;
+            memberDetails.put(name, memberDetail);
+        }
+        builder.withDetail("replicaSet", status.getString("set"));
+        builder.withDetail("members", memberDetails);
+        if (up && primaryOptime == null) {
+            builder.down().withDetail("error", "no primary");
+        } else if (up && degraded) {
+            builder.status(HealthStatuses.DEGRADED);
+        }
+    }
+
+    /**
+     * 驱动后台监控测得的各成员往返耗时，不产生额外请求
+     *
+     * @param cluster 驱动的集群描述，可以为null
+     * @return 以host:port为key的往返耗时，纳秒
+     */
+    static Map<String, Long> getRoundTripNanos(ClusterDescription cluster) {
+        if (cluster == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, Long> roundTrips = new LinkedHashMap<>();
+        for (ServerDescription server : cluster.getServerDescriptions()) {
+            if (server.isOk()) {
+                roundTrips.put(server.getAddress().toString(), server.getRoundTripTimeNanos());
+            }
+        }
+        return roundTrips;
+    }
+}
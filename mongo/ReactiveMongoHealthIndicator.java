@@ -0,0 +1,187 @@
+import com.mongodb.reactivestreams.client.MongoClient;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.AbstractReactiveHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+
+/**
+ * 响应式mongodb的健康检查器
+ * 与 {@link MongoHealthIndicator} 给出相同的信息：探测耗时、版本与副本集成员，但全程不阻塞线程，
+ * 探测与 replSetGetStatus 同时发出，各自有超时时间
+ * 将该类注册到spring中时，bean name命名为mongoHealthIndicator，即可替代默认实现
+ *
+ * @see org.springframework.boot.actuate.mongo.MongoReactiveHealthIndicator
+ * @see DefaultMongoConfig
+ */
+@HealthCost(HealthCostTier.SINGLE_ROUND_TRIP)
+public class ReactiveMongoHealthIndicator extends AbstractReactiveHealthIndicator implements MeterBinder,
+    LatencyWindowAware {
+
+    private static final String PROBE_ESTIMATED = "estimated";
+
+    private static final String PROBE_COUNT = "count";
+
+    private static final Document PING = new Document("ping", 1);
+
+    private static final Document BUILD_INFO = new Document("buildInfo", 1);
+
+    private static final BiConsumer<Health.Builder, Boolean> NO_REPLICA_SET = (builder, up) -> {
+    };
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    /**
+     * 查询的collection名称，根据实际修改
+     */
+    @Value("${spring.data.mongodb.health.collection:request_log}")
+    private String collectionName;
+
+    /**
+     * 探测方式，同 {@link MongoHealthIndicator}
+     */
+    @Value("${spring.data.mongodb.health.probe:ping}")
+    private String probe = "ping";
+
+    /**
+     * 探测与 replSetGetStatus 各自的超时时间，毫秒
+     */
+    @Value("${spring.data.mongodb.health.timeout-ms:2000}")
+    private long timeoutMs = 2000;
+
+    @Value("${spring.data.mongodb.health.replica-set.enabled:true}")
+    private boolean replicaSetEnabled = true;
+
+    @Value("${spring.data.mongodb.health.replica-set.max-lag-seconds:10}")
+    private long replicaSetMaxLagSeconds = 10;
+
+    /**
+     * 用于读取驱动持续测量的各成员往返耗时，可以不存在
+     */
+    @Autowired(required = false)
+    private MongoClient mongoClient;
+
+    private volatile String version;
+
+    private final LatencyHistogram latencyHistogram = new LatencyHistogram();
+
+    private final HealthProbeMetrics metrics = new HealthProbeMetrics("mongo");
+
+    @Override
+    public void setLatencyWindowMs(long windowMs) {
+        this.latencyHistogram.setWindowMs(windowMs);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.metrics.bindTo(registry);
+    }
+
+    public ReactiveMongoHealthIndicator(ReactiveMongoTemplate reactiveMongoTemplate) {
+        super("MongoDB health check failed");
+        Assert.notNull(reactiveMongoTemplate, "ReactiveMongoTemplate must not be null");
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    @Override
+    protected Mono<Health> doHealthCheck(Health.Builder builder) {
+        Mono<Boolean> probe = Mono.defer(() -> {
+            long startTime = System.nanoTime();
+            return doProbe()
+                .timeout(Duration.ofMillis(timeoutMs))
+                .defaultIfEmpty(false)
+                .doOnSuccess(result -> recordProbe(builder, startTime, true))
+                .doOnError(e -> recordProbe(builder, startTime, false));
+        }).flatMap(result -> getVersion().map(version -> {
+            builder.withDetail("probe", this.probe);
+            builder.withDetail("result", Boolean.TRUE.equals(result) ? "yes" : "no");
+            builder.withDetail("version", version);
+            builder.up();
+            return true;
+        })).onErrorResume(e -> {
+            this.version = null;
+            builder.down(e);
+            return Mono.just(false);
+        });
+        Mono<BiConsumer<Health.Builder, Boolean>> replicaSet = replicaSetEnabled ? getReplicaSetStatus()
+            : Mono.just(NO_REPLICA_SET);
+        return Mono.zip(probe, replicaSet).map(tuple -> {
+            tuple.getT2().accept(builder, tuple.getT1());
+            return builder.build();
+        });
+    }
+
+    private Mono<Boolean> doProbe() {
+        switch (probe) {
+            case PROBE_ESTIMATED:
+                return this.reactiveMongoTemplate.getCollection(collectionName)
+                    .flatMap(collection -> Mono.from(collection.estimatedDocumentCount()))
+                    .map(count -> count >= 0);
+            case PROBE_COUNT:
+                return this.reactiveMongoTemplate.getCollection(collectionName)
+                    .flatMap(collection -> Mono.from(collection.countDocuments()))
+                    .map(count -> count >= 0);
+            default:
+                return this.reactiveMongoTemplate.executeCommand(PING).map(result -> {
+                    Object ok = result.get("ok");
+                    return ok instanceof Number && ((Number) ok).intValue() == 1;
+                });
+        }
+    }
+
+    private void recordProbe(Health.Builder builder, long startTime, boolean success) {
+        long elapsed = System.nanoTime() - startTime;
+        latencyHistogram.record(elapsed);
+        metrics.record(elapsed, success ? Status.UP : Status.DOWN);
+        builder.withDetail("timeMs", TimeUnit.NANOSECONDS.toMillis(elapsed));
+        builder.withDetail("latency", latencyHistogram.toDetails());
+    }
+
+    /**
+     * buildInfo 只在首次或探测失败后重新执行，与探测使用同一个超时，超时按探测失败处理
+     */
+    private Mono<String> getVersion() {
+        String version = this.version;
+        if (version != null) {
+            return Mono.just(version);
+        }
+        return this.reactiveMongoTemplate.executeCommand(BUILD_INFO)
+            .timeout(Duration.ofMillis(timeoutMs))
+            .map(result -> result.getString("version"))
+            .doOnNext(result -> this.version = result)
+            .defaultIfEmpty("unknown");
+    }
+
+    /**
+     * replSetGetStatus 的结果转换为写入健康信息的操作，失败时只记录原因
+     */
+    private Mono<BiConsumer<Health.Builder, Boolean>> getReplicaSetStatus() {
+        return this.reactiveMongoTemplate.getMongoDatabaseFactory()
+            .getMongoDatabase(MongoReplicaSetStatus.ADMIN_DATABASE)
+            .flatMap(admin -> Mono.from(admin.runCommand(MongoReplicaSetStatus.COMMAND)))
+            .timeout(Duration.ofMillis(timeoutMs))
+            .<BiConsumer<Health.Builder, Boolean>>map(status -> (builder, up) -> MongoReplicaSetStatus.apply(builder,
+                status, MongoReplicaSetStatus.getRoundTripNanos(
+                    mongoClient != null ? mongoClient.getClusterDescription() : null),
+                replicaSetMaxLagSeconds, up))
+            .onErrorResume(e -> Mono.just((builder, up) -> builder.withDetail("replicaSet", describe(e))));
+    }
+
+    private static String describe(Throwable error) {
+        if (error instanceof TimeoutException) {
+            return HealthStatuses.TIMEOUT.getCode();
+        }
+        return MongoReplicaSetStatus.isStandalone(error) ? "standalone" : "unavailable: " + error.getMessage();
+    }
+}
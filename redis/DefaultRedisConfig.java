@@ -1,10 +1,22 @@
-import org.springframework.context.annotation.Bean;
-import org.springframework.data.redis.connection.RedisConnectionFactory;
-
-public class DefaultRedisConfig {
-
-    @Bean
-    public RedisHealthIndicator redisHealthIndicator(RedisConnectionFactory redisConnectionFactory) {
-        return new RedisHealthIndicator(redisConnectionFactory);
-    }
-}
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+
+@Import(LatencyWindowPostProcessor.class)
+public class DefaultRedisConfig {
+
+    @Bean
+    @ConditionalOnProperty(value = "management.health.reactive.enabled", havingValue = "false", matchIfMissing = true)
+    public RedisHealthIndicator redisHealthIndicator(RedisConnectionFactory redisConnectionFactory) {
+        return new RedisHealthIndicator(redisConnectionFactory);
+    }
+
+    @Bean("redisHealthIndicator")
+    @ConditionalOnProperty(value = "management.health.reactive.enabled", havingValue = "true")
+    public ReactiveRedisHealthIndicator reactiveRedisHealthIndicator(
+        ReactiveRedisConnectionFactory reactiveRedisConnectionFactory) {
+        return new ReactiveRedisHealthIndicator(reactiveRedisConnectionFactory);
+    }
+}
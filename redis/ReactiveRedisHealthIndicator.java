@@ -0,0 +1,251 @@
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.AbstractReactiveHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.data.redis.connection.ReactiveRedisClusterConnection;
+import org.springframework.data.redis.connection.ReactiveRedisConnection;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisClusterNode;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 响应式redis的健康检查器
+ * 与 {@link RedisHealthIndicator} 给出相同的信息：单机模式PING耗时与缓存的版本号，集群模式下每个节点的耗时、角色与槽位，
+ * 但全程不阻塞线程，探测与每个集群节点各自有超时时间；哨兵拓扑只在阻塞版本中提供
+ * 将该类注册到spring中时，bean name命名为redisHealthIndicator，即可替代默认实现
+ *
+ * @see org.springframework.boot.actuate.redis.RedisReactiveHealthIndicator
+ * @see DefaultRedisConfig
+ */
+@HealthCost(HealthCostTier.SINGLE_ROUND_TRIP)
+public class ReactiveRedisHealthIndicator extends AbstractReactiveHealthIndicator implements MeterBinder,
+    LatencyWindowAware {
+
+    private final ReactiveRedisConnectionFactory connectionFactory;
+
+    /**
+     * 探测的超时时间，毫秒
+     */
+    @Value("${management.health.redis.timeout-ms:1000}")
+    private long timeoutMs = 1000;
+
+    @Value("${management.health.redis.cluster.node-timeout-ms:1000}")
+    private long clusterNodeTimeoutMs = 1000;
+
+    @Value("${management.health.redis.cluster.latency-threshold-ms:200}")
+    private long clusterLatencyThresholdMs = 200;
+
+    @Value("${management.health.redis.version-ttl-ms:600000}")
+    private long versionTtlMs = 600000;
+
+    private volatile String version;
+
+    private volatile long versionExpiresAt;
+
+    private final LatencyHistogram latencyHistogram = new LatencyHistogram();
+
+    private final HealthProbeMetrics metrics = new HealthProbeMetrics("redis");
+
+    @Override
+    public void setLatencyWindowMs(long windowMs) {
+        this.latencyHistogram.setWindowMs(windowMs);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.metrics.bindTo(registry);
+    }
+
+    public ReactiveRedisHealthIndicator(ReactiveRedisConnectionFactory connectionFactory) {
+        super("Redis health check failed");
+        Assert.notNull(connectionFactory, "ConnectionFactory must not be null");
+        this.connectionFactory = connectionFactory;
+    }
+
+    @Override
+    protected Mono<Health> doHealthCheck(Health.Builder builder) {
+        // 建立连接可能阻塞，放到弹性线程池
+        return Mono.usingWhen(
+            Mono.fromSupplier(this.connectionFactory::getReactiveConnection).subscribeOn(Schedulers.boundedElastic()),
+            connection -> doHealthCheck(builder, connection),
+            ReactiveRedisConnection::closeLater);
+    }
+
+    private Mono<Health> doHealthCheck(Health.Builder builder, ReactiveRedisConnection connection) {
+        boolean cluster = connection instanceof ReactiveRedisClusterConnection;
+        Mono<Boolean> probe = Mono.defer(() -> {
+            long startTime = System.nanoTime();
+            Mono<?> command = cluster
+                ? connection.stringCommands().get(ByteBuffer.wrap(RedisHealthIndicator.GET_OK_BYTES))
+                : connection.ping();
+            return command.then(Mono.just(true))
+                .timeout(Duration.ofMillis(timeoutMs))
+                .doOnSuccess(result -> recordProbe(builder, startTime, true))
+                .doOnError(e -> recordProbe(builder, startTime, false));
+        }).map(result -> {
+            builder.withDetail("result", "ok");
+            builder.up();
+            return true;
+        }).onErrorResume(e -> {
+            this.versionExpiresAt = 0;
+            builder.down(e);
+            return Mono.just(false);
+        });
+
+        if (cluster) {
+            ReactiveRedisClusterConnection clusterConnection = (ReactiveRedisClusterConnection) connection;
+            return probe.flatMap(up -> doClusterCheck(builder, clusterConnection, up)).thenReturn(builder)
+                .map(Health.Builder::build);
+        }
+        // 读取版本失败不影响探测结果
+        return probe.filter(Boolean::booleanValue)
+            .flatMap(up -> getVersion(connection))
+            .doOnNext(version -> builder.withDetail("version", version))
+            .onErrorResume(e -> Mono.empty())
+            .then(Mono.fromSupplier(builder::build));
+    }
+
+    /**
+     * 读取集群信息，并发PING每个主从节点，主节点失败时为DOWN，从节点失败或节点超过耗时阈值时为DEGRADED
+     * CLUSTER INFO 与 CLUSTER NODES 各自受超时约束，超时时记录在对应的详情中并报告TIMEOUT
+     */
+    private Mono<Void> doClusterCheck(Health.Builder builder, ReactiveRedisClusterConnection connection, boolean up) {
+        Mono<Void> clusterInfo = connection.clusterGetClusterInfo()
+            .timeout(Duration.ofMillis(timeoutMs))
+            .doOnNext(info -> {
+                builder.withDetail("cluster_size", info.getClusterSize());
+                builder.withDetail("slots_up", info.getSlotsOk());
+                builder.withDetail("slots_fail", info.getSlotsFail());
+            })
+            .onErrorResume(TimeoutException.class, e -> onClusterTimeout(builder, "cluster_info", up))
+            .then();
+        Mono<Map<String, Map<String, Object>>> nodes = connection.clusterGetNodes()
+            .collectList()
+            .timeout(Duration.ofMillis(timeoutMs))
+            .flatMapMany(Flux::fromIterable)
+            .flatMap(node -> pingNode(connection, node))
+            .collectMap(NodeResult::getName, NodeResult::getDetails, LinkedHashMap::new);
+        return clusterInfo.then(nodes).doOnNext(details -> {
+            builder.withDetail("nodes", details);
+            boolean masterDown = false;
+            boolean degraded = false;
+            for (Map<String, Object> nodeDetails : details.values()) {
+                boolean nodeUp = Status.UP.getCode().equals(nodeDetails.get("status"));
+                boolean nodeFailed = !nodeUp && !HealthStatuses.DEGRADED.getCode().equals(nodeDetails.get("status"));
+                masterDown |= nodeFailed && "master".equals(nodeDetails.get("role"));
+                degraded |= !nodeUp;
+            }
+            if (up && masterDown) {
+                builder.down();
+            } else if (up && degraded && !HealthStatuses.TIMEOUT.equals(builder.build().getStatus())) {
+                // CLUSTER INFO 已超时时保留TIMEOUT
+                builder.status(HealthStatuses.DEGRADED);
+            }
+        }).onErrorResume(TimeoutException.class, e -> onClusterTimeout(builder, "nodes", up)).then();
+    }
+
+    private <T> Mono<T> onClusterTimeout(Health.Builder builder, String detail, boolean up) {
+        builder.withDetail(detail, HealthStatuses.TIMEOUT.getCode());
+        if (up) {
+            builder.status(HealthStatuses.TIMEOUT);
+        }
+        return Mono.empty();
+    }
+
+    private Mono<NodeResult> pingNode(ReactiveRedisClusterConnection connection, RedisClusterNode node) {
+        return Mono.defer(() -> {
+            long startTime = System.nanoTime();
+            return connection.ping(node)
+                .timeout(Duration.ofMillis(clusterNodeTimeoutMs))
+                .map(result -> toNodeResult(node, System.nanoTime() - startTime, null))
+                .onErrorResume(e -> Mono.just(toNodeResult(node, System.nanoTime() - startTime, e)));
+        });
+    }
+
+    private NodeResult toNodeResult(RedisClusterNode node, long elapsed, Throwable error) {
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(elapsed);
+        Status status;
+        if (error != null) {
+            status = error instanceof TimeoutException ? HealthStatuses.TIMEOUT : Status.DOWN;
+        } else if (elapsedMs > clusterLatencyThresholdMs) {
+            status = HealthStatuses.DEGRADED;
+        } else {
+            status = Status.UP;
+        }
+        metrics.record(node.asString(), elapsed, status);
+
+        Map<String, Object> nodeDetails = new LinkedHashMap<>();
+        nodeDetails.put("status", status.getCode());
+        nodeDetails.put("role", node.isMaster() ? "master" : "replica");
+        nodeDetails.put("timeMs", elapsedMs);
+        if (node.isMaster()) {
+            nodeDetails.put("slots", RedisHealthIndicator.toSlotRanges(node.getSlotRange().getSlots()));
+        } else if (node.getMasterId() != null) {
+            nodeDetails.put("masterId", node.getMasterId());
+        }
+        if (error != null) {
+            nodeDetails.put("error", String.valueOf(error.getMessage()));
+        }
+        return new NodeResult(node.asString(), nodeDetails);
+    }
+
+    private void recordProbe(Health.Builder builder, long startTime, boolean success) {
+        long elapsed = System.nanoTime() - startTime;
+        latencyHistogram.record(elapsed);
+        metrics.record(elapsed, success ? Status.UP : Status.DOWN);
+        builder.withDetail("timeMs", TimeUnit.NANOSECONDS.toMillis(elapsed));
+        builder.withDetail("latency", latencyHistogram.toDetails());
+    }
+
+    /**
+     * 读取redis版本，在缓存时间内不再执行 INFO server
+     */
+    private Mono<String> getVersion(ReactiveRedisConnection connection) {
+        String version = this.version;
+        if (version != null && System.currentTimeMillis() < this.versionExpiresAt) {
+            return Mono.just(version);
+        }
+        return connection.serverCommands().info("server")
+            .timeout(Duration.ofMillis(timeoutMs))
+            .map(info -> info.getProperty("redis_version"))
+            .doOnNext(result -> {
+                this.version = result;
+                this.versionExpiresAt = System.currentTimeMillis() + this.versionTtlMs;
+            });
+    }
+
+    /**
+     * 单个集群节点的探测结果
+     */
+    private static final class NodeResult {
+
+        private final String name;
+
+        private final Map<String, Object> details;
+
+        private NodeResult(String name, Map<String, Object> details) {
+            this.name = name;
+            this.details = details;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        Map<String, Object> getDetails() {
+            return details;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+import org.springframework.data.redis.connection.RedisClusterConfiguration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisSentinelConfiguration;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisClientConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.util.ClassUtils;
+
+import java.time.Duration;
+
+/**
+ * 健康检查专用的redis连接工厂
+ * 按应用连接工厂的单机配置另建一个不使用连接池的工厂，健康检查只占用一个连接，不与业务争抢连接池
+ * 目前支持Lettuce与Jedis的单机模式，集群与哨兵模式仍使用应用的连接工厂；Lettuce的工厂复用应用的ClientResources；
+ * 另外提供哨兵模式下主节点名称的读取，以及直连哨兵模式中单个副本或集群中单个节点的连接工厂
+ *
+ * @see RedisHealthIndicator
+ */
+final class RedisHealthConnections {
+
+    private static final ClassLoader CLASS_LOADER = RedisHealthConnections.class.getClassLoader();
+
+    private static final boolean LETTUCE_PRESENT = ClassUtils.isPresent(
+        "org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory", CLASS_LOADER)
+        && ClassUtils.isPresent("io.lettuce.core.RedisClient", CLASS_LOADER);
+
+    private static final boolean JEDIS_PRESENT = ClassUtils.isPresent(
+        "org.springframework.data.redis.connection.jedis.JedisConnectionFactory", CLASS_LOADER)
+        && ClassUtils.isPresent("redis.clients.jedis.Jedis", CLASS_LOADER);
+
+    private RedisHealthConnections() {
+    }
+
+    /**
+     * 创建健康检查专用的连接工厂，已完成初始化，使用方负责销毁
+     *
+     * @param connectionFactory 应用的连接工厂
+     * @param timeout           连接与命令超时
+     * @return 不支持的连接工厂或非单机模式时为null
+     */
+    static RedisConnectionFactory newHealthConnectionFactory(RedisConnectionFactory connectionFactory,
+                                                             Duration timeout) {
+        if (LETTUCE_PRESENT && LettuceSupport.isLettuce(connectionFactory)) {
+            return LettuceSupport.newHealthConnectionFactory(connectionFactory, timeout);
+        }
+        if (JEDIS_PRESENT && JedisSupport.isJedis(connectionFactory)) {
+            return JedisSupport.newHealthConnectionFactory(connectionFactory, timeout);
+        }
+        return null;
+    }
+
+    /**
+     * 哨兵模式下的主节点名称
+     *
+     * @param connectionFactory 应用的连接工厂
+     * @return 非哨兵模式或不支持的连接工厂时为null
+     */
+    static String getSentinelMaster(RedisConnectionFactory connectionFactory) {
+        RedisSentinelConfiguration configuration = null;
+        if (LETTUCE_PRESENT && LettuceSupport.isLettuce(connectionFactory)) {
+            configuration = ((LettuceConnectionFactory) connectionFactory).getSentinelConfiguration();
+        } else if (JEDIS_PRESENT && JedisSupport.isJedis(connectionFactory)) {
+            configuration = ((JedisConnectionFactory) connectionFactory).getSentinelConfiguration();
+        }
+        return configuration != null && configuration.getMaster() != null
+            ? configuration.getMaster().getName() : null;
+    }
+
+    /**
+     * 创建直连哨兵模式中某个副本或集群中某个节点的连接工厂，已完成初始化，使用方负责销毁
+     * 哨兵模式使用哨兵配置中数据节点的密码与库号，集群模式使用集群配置的密码
+     *
+     * @param connectionFactory 应用的连接工厂
+     * @param host              节点地址
+     * @param port              节点端口
+     * @param timeout           连接与命令超时
+     * @return 不支持的连接工厂或单机模式时为null
+     */
+    static RedisConnectionFactory newNodeConnectionFactory(RedisConnectionFactory connectionFactory, String host,
+                                                           int port, Duration timeout) {
+        if (LETTUCE_PRESENT && LettuceSupport.isLettuce(connectionFactory)) {
+            return LettuceSupport.newNodeConnectionFactory(connectionFactory, host, port, timeout);
+        }
+        if (JEDIS_PRESENT && JedisSupport.isJedis(connectionFactory)) {
+            return JedisSupport.newNodeConnectionFactory(connectionFactory, host, port, timeout);
+        }
+        return null;
+    }
+
+    private static RedisStandaloneConfiguration nodeConfiguration(RedisSentinelConfiguration sentinel,
+                                                                  RedisClusterConfiguration cluster,
+                                                                  String host, int port) {
+        RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration(host, port);
+        if (sentinel != null) {
+            configuration.setPassword(sentinel.getPassword());
+            configuration.setDatabase(sentinel.getDatabase());
+        } else {
+            configuration.setPassword(cluster.getPassword());
+        }
+        return configuration;
+    }
+
+    private static class LettuceSupport {
+
+        static boolean isLettuce(RedisConnectionFactory connectionFactory) {
+            return connectionFactory instanceof LettuceConnectionFactory;
+        }
+
+        static RedisConnectionFactory newHealthConnectionFactory(RedisConnectionFactory connectionFactory,
+                                                                 Duration timeout) {
+            LettuceConnectionFactory lettuce = (LettuceConnectionFactory) connectionFactory;
+            if (lettuce.isClusterAware() || lettuce.isRedisSentinelAware()) {
+                return null;
+            }
+            // 与节点连接工厂一样复用应用的ClientResources，不另建事件循环与计时器线程
+            LettuceClientConfiguration.LettuceClientConfigurationBuilder builder = LettuceClientConfiguration.builder()
+                .commandTimeout(timeout);
+            if (lettuce.getClientResources() != null) {
+                builder.clientResources(lettuce.getClientResources());
+            }
+            if (lettuce.isUseSsl()) {
+                builder.useSsl();
+            }
+            LettuceConnectionFactory healthFactory = new LettuceConnectionFactory(lettuce.getStandaloneConfiguration(),
+                builder.build());
+            healthFactory.afterPropertiesSet();
+            return healthFactory;
+        }
+
+        static RedisConnectionFactory newNodeConnectionFactory(RedisConnectionFactory connectionFactory,
+                                                               String host, int port, Duration timeout) {
+            LettuceConnectionFactory lettuce = (LettuceConnectionFactory) connectionFactory;
+            if (!lettuce.isRedisSentinelAware() && !lettuce.isClusterAware()) {
+                return null;
+            }
+            // 复用应用的ClientResources，不为每个节点另建事件循环
+            LettuceClientConfiguration.LettuceClientConfigurationBuilder builder = LettuceClientConfiguration.builder()
+                .commandTimeout(timeout);
+            if (lettuce.getClientResources() != null) {
+                builder.clientResources(lettuce.getClientResources());
+            }
+            if (lettuce.isUseSsl()) {
+                builder.useSsl();
+            }
+            LettuceConnectionFactory nodeFactory = new LettuceConnectionFactory(nodeConfiguration(
+                lettuce.getSentinelConfiguration(), lettuce.getClusterConfiguration(), host, port), builder.build());
+            nodeFactory.afterPropertiesSet();
+            return nodeFactory;
+        }
+    }
+
+    private static class JedisSupport {
+
+        static boolean isJedis(RedisConnectionFactory connectionFactory) {
+            return connectionFactory instanceof JedisConnectionFactory;
+        }
+
+        static RedisConnectionFactory newHealthConnectionFactory(RedisConnectionFactory connectionFactory,
+                                                                 Duration timeout) {
+            JedisConnectionFactory jedis = (JedisConnectionFactory) connectionFactory;
+            if (jedis.isRedisClusterAware() || jedis.isRedisSentinelAware()) {
+                return null;
+            }
+            // 不调用usePooling，每个工厂只建立直连
+            JedisClientConfiguration.JedisClientConfigurationBuilder builder = JedisClientConfiguration.builder()
+                .connectTimeout(timeout)
+                .readTimeout(timeout);
+            JedisClientConfiguration configuration = jedis.isUseSsl() ? builder.useSsl().build() : builder.build();
+            JedisConnectionFactory healthFactory = new JedisConnectionFactory(jedis.getStandaloneConfiguration(),
+                configuration);
+            healthFactory.afterPropertiesSet();
+            return healthFactory;
+        }
+
+        static RedisConnectionFactory newNodeConnectionFactory(RedisConnectionFactory connectionFactory,
+                                                               String host, int port, Duration timeout) {
+            JedisConnectionFactory jedis = (JedisConnectionFactory) connectionFactory;
+            if (!jedis.isRedisSentinelAware() && !jedis.isRedisClusterAware()) {
+                return null;
+            }
+            JedisClientConfiguration.JedisClientConfigurationBuilder builder = JedisClientConfiguration.builder()
+                .connectTimeout(timeout)
+                .readTimeout(timeout);
+            JedisClientConfiguration configuration = jedis.isUseSsl() ? builder.useSsl().build() : builder.build();
+            JedisConnectionFactory nodeFactory = new JedisConnectionFactory(nodeConfiguration(
+                jedis.getSentinelConfiguration(), jedis.getClusterConfiguration(), host, port), configuration);
+            nodeFactory.afterPropertiesSet();
+            return nodeFactory;
+        }
+    }
+}
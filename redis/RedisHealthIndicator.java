@@ -1,66 +1,602 @@
-import org.springframework.boot.actuate.health.AbstractHealthIndicator;
-import org.springframework.boot.actuate.health.Health;
-import org.springframework.data.redis.connection.ClusterInfo;
-import org.springframework.data.redis.connection.RedisClusterConnection;
-import org.springframework.data.redis.connection.RedisConnection;
-import org.springframework.data.redis.connection.RedisConnectionFactory;
-import org.springframework.data.redis.core.RedisConnectionUtils;
-import org.springframework.util.Assert;
-
-import java.nio.charset.StandardCharsets;
-
-/**
- * redis的健康检查器
- * 重构自 org.springframework.boot.actuate.redis.RedisHealthIndicator
- * 增加真实调用与耗时统计
- * 将该类注册到spring中时，bean name命名为redisHealthIndicator，即可替代默认实现
- *
- * @see org.springframework.boot.actuate.redis.RedisHealthIndicator
- * @see DefaultRedisConfig
- */
-public class RedisHealthIndicator extends AbstractHealthIndicator {
-
-    protected static final byte[] GET_OK_BYTES = "ok".getBytes(StandardCharsets.UTF_8);
-
-    private final RedisConnectionFactory redisConnectionFactory;
-
-    public RedisHealthIndicator(RedisConnectionFactory connectionFactory) {
-        super("Redis health check failed");
-        Assert.notNull(connectionFactory, "ConnectionFactory must not be null");
-        this.redisConnectionFactory = connectionFactory;
-    }
-
-    @Override
-    protected void doHealthCheck(Health.Builder builder) throws Exception {
-        RedisConnection connection = RedisConnectionUtils.getConnection(this.redisConnectionFactory);
-        try {
-            doHealthCheck(builder, connection);
-        } finally {
-            RedisConnectionUtils.releaseConnection(connection, this.redisConnectionFactory);
-        }
-    }
-
-    private void doHealthCheck(Health.Builder builder, RedisConnection connection) {
-        // 增加真实调用与耗时统计
-        try {
-            long starTime = System.currentTimeMillis();
-            connection.get(GET_OK_BYTES);
-            long entTime = System.currentTimeMillis();
-            builder.withDetail("result", "ok");
-            builder.withDetail("timeMs", entTime - starTime);
-            builder.up();
-        } catch (Throwable t) {
-            builder.down(t);
-        }
-
-        if (connection instanceof RedisClusterConnection) {
-            ClusterInfo clusterInfo = ((RedisClusterConnection) connection).clusterGetClusterInfo();
-            builder.withDetail("cluster_size", clusterInfo.getClusterSize());
-            builder.withDetail("slots_up", clusterInfo.getSlotsOk());
-            builder.withDetail("slots_fail", clusterInfo.getSlotsFail());
-        } else {
-            builder.withDetail("version", connection.info("server").getProperty("redis_version"));
-        }
-    }
-
-}
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.data.redis.connection.ClusterInfo;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisClusterNode;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisSentinelConnection;
+import org.springframework.data.redis.connection.RedisServer;
+import org.springframework.data.redis.core.RedisConnectionUtils;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * redis的健康检查器
+ * 重构自 org.springframework.boot.actuate.redis.RedisHealthIndicator
+ * 增加真实调用与耗时统计，单机模式只发送一次PING，版本号按缓存时间读取，可选在专用直连上探测
+ * 集群模式下在每个节点的直连上并发PING每个主从节点，给出每个节点的耗时、角色与槽位，慢节点或从节点失败时为DEGRADED
+ * 哨兵模式下同时查询哨兵拓扑与主节点复制信息，再并发直连PING每个副本，给出每个副本的偏移量落后与耗时，
+ * 故障转移进行中时为FAILOVER
+ * 将该类注册到spring中时，bean name命名为redisHealthIndicator，即可替代默认实现
+ *
+ * @see org.springframework.boot.actuate.redis.RedisHealthIndicator
+ * @see DefaultRedisConfig
+ */
+@HealthCost(HealthCostTier.SINGLE_ROUND_TRIP)
+public class RedisHealthIndicator extends AbstractHealthIndicator implements MeterBinder, DisposableBean,
+    LatencyWindowAware {
+
+    protected static final byte[] GET_OK_BYTES = "ok".getBytes(StandardCharsets.UTF_8);
+
+    private final RedisConnectionFactory redisConnectionFactory;
+
+    private final LatencyHistogram latencyHistogram = new LatencyHistogram();
+
+    private final HealthProbeMetrics metrics = new HealthProbeMetrics("redis");
+
+    /**
+     * 集群模式下每个节点PING的超时时间，毫秒，全部节点同时开始
+     */
+    @Value("${management.health.redis.cluster.node-timeout-ms:1000}")
+    private long clusterNodeTimeoutMs = 1000;
+
+    /**
+     * 集群节点PING耗时超过该值时记为DEGRADED，毫秒
+     */
+    @Value("${management.health.redis.cluster.latency-threshold-ms:200}")
+    private long clusterLatencyThresholdMs = 200;
+
+    /**
+     * 集群节点与哨兵拓扑的并发探测上限
+     */
+    @Value("${management.health.redis.cluster.concurrency:8}")
+    private int clusterConcurrency = 8;
+
+    private volatile ExecutorService probeExecutor;
+
+    /**
+     * 哨兵模式下每个副本、集群模式下每个节点的直连工厂，key为host:port
+     */
+    private final Map<String, RedisConnectionFactory> nodeConnectionFactories = new ConcurrentHashMap<>();
+
+    /**
+     * redis版本的缓存时间，毫秒，探测失败后下次重新读取
+     */
+    @Value("${management.health.redis.version-ttl-ms:600000}")
+    private long versionTtlMs = 600000;
+
+    /**
+     * 为true时单机模式在健康检查专用的直连上PING，不从应用的连接池借出连接
+     */
+    @Value("${management.health.redis.dedicated-connection:false}")
+    private boolean dedicatedConnection;
+
+    /**
+     * 专用连接的连接与命令超时，毫秒
+     */
+    @Value("${management.health.redis.dedicated-connection-timeout-ms:1000}")
+    private long dedicatedConnectionTimeoutMs = 1000;
+
+    /**
+     * 哨兵模式下查询哨兵与主节点复制信息、以及PING每个副本的超时时间，毫秒
+     */
+    @Value("${management.health.redis.sentinel.timeout-ms:1000}")
+    private long sentinelTimeoutMs = 1000;
+
+    /**
+     * 哨兵模式下副本复制偏移量落后超过该值时记为DEGRADED，字节
+     */
+    @Value("${management.health.redis.sentinel.max-offset-lag:1048576}")
+    private long sentinelMaxOffsetLag = 1048576;
+
+    private final String sentinelMaster;
+
+    private volatile String version;
+
+    private volatile long versionExpiresAt;
+
+    private final Object healthConnectionMonitor = new Object();
+
+    private RedisConnectionFactory healthConnectionFactory;
+
+    private RedisConnection healthConnection;
+
+    private boolean healthConnectionUnsupported;
+
+    @Override
+    public void setLatencyWindowMs(long windowMs) {
+        this.latencyHistogram.setWindowMs(windowMs);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.metrics.bindTo(registry);
+    }
+
+    public RedisHealthIndicator(RedisConnectionFactory connectionFactory) {
+        super("Redis health check failed");
+        Assert.notNull(connectionFactory, "ConnectionFactory must not be null");
+        this.redisConnectionFactory = connectionFactory;
+        this.sentinelMaster = RedisHealthConnections.getSentinelMaster(connectionFactory);
+    }
+
+    @Override
+    protected void doHealthCheck(Health.Builder builder) throws Exception {
+        if (this.dedicatedConnection && doDedicatedHealthCheck(builder)) {
+            return;
+        }
+        RedisConnection connection = RedisConnectionUtils.getConnection(this.redisConnectionFactory);
+        try {
+            boolean up = doHealthCheck(builder, connection);
+            if (this.sentinelMaster != null) {
+                doSentinelCheck(builder, connection, up);
+            }
+        } finally {
+            RedisConnectionUtils.releaseConnection(connection, this.redisConnectionFactory);
+        }
+    }
+
+    /**
+     * 在专用连接上探测，失败后关闭专用连接，下次重新建立
+     *
+     * @return 不支持专用连接时为false，由调用方改用应用的连接工厂
+     */
+    private boolean doDedicatedHealthCheck(Health.Builder builder) {
+        synchronized (this.healthConnectionMonitor) {
+            if (this.healthConnectionUnsupported) {
+                return false;
+            }
+            RedisConnection connection;
+            try {
+                connection = getHealthConnection();
+            } catch (Exception e) {
+                builder.down(e);
+                return true;
+            }
+            if (connection == null) {
+                return false;
+            }
+            if (!doHealthCheck(builder, connection)) {
+                closeHealthConnection();
+            }
+            return true;
+        }
+    }
+
+    private RedisConnection getHealthConnection() {
+        if (this.healthConnection == null) {
+            if (this.healthConnectionFactory == null) {
+                this.healthConnectionFactory = RedisHealthConnections.newHealthConnectionFactory(
+                    this.redisConnectionFactory, Duration.ofMillis(this.dedicatedConnectionTimeoutMs));
+                if (this.healthConnectionFactory == null) {
+                    this.healthConnectionUnsupported = true;
+                    return null;
+                }
+            }
+            this.healthConnection = this.healthConnectionFactory.getConnection();
+        }
+        return this.healthConnection;
+    }
+
+    private void closeHealthConnection() {
+        RedisConnection connection = this.healthConnection;
+        this.healthConnection = null;
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (Exception e) {
+                // 连接已不可用，忽略关闭失败
+            }
+        }
+    }
+
+    private boolean doHealthCheck(Health.Builder builder, RedisConnection connection) {
+        // 增加真实调用与耗时统计，单机模式只发送一次PING
+        boolean cluster = connection instanceof RedisClusterConnection;
+        boolean up = false;
+        try {
+            long startTime = System.nanoTime();
+            boolean success = false;
+            try {
+                if (cluster) {
+                    connection.get(GET_OK_BYTES);
+                } else {
+                    connection.ping();
+                }
+                success = true;
+            } finally {
+                long elapsed = System.nanoTime() - startTime;
+                latencyHistogram.record(elapsed);
+                metrics.record(elapsed, success ? Status.UP : Status.DOWN);
+                builder.withDetail("timeMs", TimeUnit.NANOSECONDS.toMillis(elapsed));
+                builder.withDetail("latency", latencyHistogram.toDetails());
+            }
+            builder.withDetail("result", "ok");
+            builder.up();
+            up = true;
+        } catch (Throwable t) {
+            builder.down(t);
+        }
+
+        if (cluster) {
+            ClusterInfo clusterInfo = ((RedisClusterConnection) connection).clusterGetClusterInfo();
+            builder.withDetail("cluster_size", clusterInfo.getClusterSize());
+            builder.withDetail("slots_up", clusterInfo.getSlotsOk());
+            builder.withDetail("slots_fail", clusterInfo.getSlotsFail());
+            doClusterNodesCheck(builder, (RedisClusterConnection) connection, up);
+        } else if (up) {
+            builder.withDetail("version", getVersion(connection));
+        } else {
+            // 连接可能已重建，重新连上后再读取版本
+            this.versionExpiresAt = 0;
+        }
+        return up;
+    }
+
+    /**
+     * 读取redis版本，在缓存时间内不再执行 INFO server
+     */
+    private String getVersion(RedisConnection connection) {
+        String version = this.version;
+        long now = System.currentTimeMillis();
+        if (version == null || now >= this.versionExpiresAt) {
+            version = connection.info("server").getProperty("redis_version");
+            this.version = version;
+            this.versionExpiresAt = now + this.versionTtlMs;
+        }
+        return version;
+    }
+
+    /**
+     * 在每个节点的直连上并发PING集群的每个主从节点，给出每个节点的耗时、角色与槽位
+     * 借自应用的集群连接只在调用线程上读取节点列表，超时的PING被取消时不会与连接归还并发
+     * 主节点失败时为DOWN，从节点失败或任一节点超过耗时阈值时为DEGRADED
+     */
+    private void doClusterNodesCheck(Health.Builder builder, RedisClusterConnection connection, boolean up) {
+        Map<String, RedisClusterNode> nodes = new LinkedHashMap<>();
+        for (RedisClusterNode node : connection.clusterGetNodes()) {
+            nodes.put(node.asString(), node);
+        }
+        retainNodeConnections(nodes.keySet());
+        Duration timeout = Duration.ofMillis(clusterNodeTimeoutMs);
+        Map<String, Callable<String>> tasks = new LinkedHashMap<>(nodes.size() * 2);
+        nodes.forEach((name, node) -> tasks.put(name, () -> pingNode(name, timeout)));
+
+        Map<String, Object> details = new LinkedHashMap<>(nodes.size() * 2);
+        boolean masterDown = false;
+        boolean degraded = false;
+        for (Map.Entry<String, ConcurrentProbes.ProbeResult<String>> entry
+            : ConcurrentProbes.invokeAll(getProbeExecutor(), tasks, clusterNodeTimeoutMs).entrySet()) {
+            String name = entry.getKey();
+            RedisClusterNode node = nodes.get(name);
+            ConcurrentProbes.ProbeResult<String> probeResult = entry.getValue();
+            Status status;
+            if (!probeResult.isSuccess()) {
+                status = probeResult.isTimedOut() ? HealthStatuses.TIMEOUT : Status.DOWN;
+                masterDown |= node.isMaster();
+                degraded = true;
+            } else if (probeResult.getElapsedMs() > clusterLatencyThresholdMs) {
+                status = HealthStatuses.DEGRADED;
+                degraded = true;
+            } else {
+                status = Status.UP;
+            }
+            metrics.record(name, probeResult.getElapsedNanos(), status);
+
+            Map<String, Object> nodeDetails = new LinkedHashMap<>();
+            nodeDetails.put("status", status.getCode());
+            nodeDetails.put("role", node.isMaster() ? "master" : "replica");
+            nodeDetails.put("timeMs", probeResult.getElapsedMs());
+            if (node.isMaster()) {
+                nodeDetails.put("slots", toSlotRanges(node.getSlotRange().getSlots()));
+            } else if (node.getMasterId() != null) {
+                nodeDetails.put("masterId", node.getMasterId());
+            }
+            if (probeResult.getError() != null) {
+                nodeDetails.put("error", String.valueOf(probeResult.getError().getMessage()));
+            }
+            details.put(name, nodeDetails);
+        }
+        builder.withDetail("nodes", details);
+        if (up && masterDown) {
+            builder.down();
+        } else if (up && degraded) {
+            builder.status(HealthStatuses.DEGRADED);
+        }
+    }
+
+    /**
+     * 向哨兵查询主节点与副本的同时，在调用线程上对主节点执行 INFO replication，再并发PING每个副本，
+     * 给出每个副本的复制偏移量落后与直连耗时
+     * 主节点连接借自应用的连接池，只在调用线程上使用，超时的哨兵查询被取消时不会与连接归还并发
+     * 故障转移进行中或主节点已不是master时为FAILOVER，主节点被判定下线时为DOWN，
+     * 副本不在线、不可达、被判定下线或落后过多时为DEGRADED
+     */
+    private void doSentinelCheck(Health.Builder builder, RedisConnection connection, boolean up) {
+        Map<String, Callable<Object>> tasks = new LinkedHashMap<>(4);
+        tasks.put("sentinel", this::querySentinel);
+        tasks.put("master", () -> connection.info("replication"));
+        Map<String, ConcurrentProbes.ProbeResult<Object>> results = ConcurrentProbes.invokeAll(getProbeExecutor(),
+            tasks, sentinelTimeoutMs, Collections.singleton("master"));
+        ConcurrentProbes.ProbeResult<Object> sentinelResult = results.get("sentinel");
+        ConcurrentProbes.ProbeResult<Object> masterResult = results.get("master");
+
+        Map<String, Object> details = new LinkedHashMap<>();
+        details.put("master", sentinelMaster);
+        Status status = Status.UP;
+        RedisServer master = null;
+        Collection<RedisServer> sentinelReplicas = Collections.emptyList();
+        if (sentinelResult.isSuccess()) {
+            SentinelTopology topology = (SentinelTopology) sentinelResult.getValue();
+            master = topology.master;
+            sentinelReplicas = topology.replicas;
+        } else {
+            details.put("sentinelError", describe(sentinelResult));
+            status = HealthStatuses.DEGRADED;
+        }
+        RedisReplicationInfo replication = null;
+        if (masterResult.isSuccess()) {
+            replication = RedisReplicationInfo.parse((Properties) masterResult.getValue());
+        } else if (up) {
+            details.put("replicationError", describe(masterResult));
+            status = HealthStatuses.DEGRADED;
+        }
+
+        if (master != null) {
+            String flags = master.get("flags");
+            details.put("address", master.asString());
+            details.put("flags", flags);
+            if (hasFlag(flags, "failover_in_progress")) {
+                status = HealthStatuses.FAILOVER;
+            } else if (hasFlag(flags, "s_down") || hasFlag(flags, "o_down")) {
+                status = Status.DOWN;
+            }
+        }
+        if (replication != null && !"master".equals(replication.getRole()) && status != Status.DOWN) {
+            // 连接到的节点已被降为副本，主从切换尚未完成
+            status = HealthStatuses.FAILOVER;
+        }
+
+        Map<String, Object> replicaDetails = new LinkedHashMap<>();
+        boolean replicaDegraded = false;
+        Map<String, RedisReplicationInfo.Replica> masterView = replication != null
+            ? replication.getReplicas() : Collections.emptyMap();
+        Set<String> addresses = new LinkedHashSet<>(masterView.keySet());
+        Map<String, RedisServer> sentinelView = new LinkedHashMap<>();
+        for (RedisServer replica : sentinelReplicas) {
+            sentinelView.put(replica.asString(), replica);
+            addresses.add(replica.asString());
+        }
+        Map<String, ConcurrentProbes.ProbeResult<String>> pings = pingReplicas(addresses);
+        for (String address : addresses) {
+            Map<String, Object> replicaDetail = new LinkedHashMap<>();
+            boolean degraded = false;
+            ConcurrentProbes.ProbeResult<String> ping = pings.get(address);
+            replicaDetail.put("timeMs", ping.getElapsedMs());
+            if (!ping.isSuccess()) {
+                replicaDetail.put("error", describe(ping));
+                degraded = true;
+            }
+            RedisReplicationInfo.Replica replica = masterView.get(address);
+            if (replica != null) {
+                long offsetLag = replica.getOffset() >= 0 && replication.getMasterOffset() >= 0
+                    ? Math.max(0, replication.getMasterOffset() - replica.getOffset()) : -1;
+                replicaDetail.put("state", replica.getState());
+                replicaDetail.put("offset", replica.getOffset());
+                replicaDetail.put("offsetLag", offsetLag);
+                replicaDetail.put("lagSeconds", replica.getLagSeconds());
+                degraded = !"online".equals(replica.getState()) || offsetLag > sentinelMaxOffsetLag;
+            } else if (replication != null) {
+                // 哨兵认为存在但未连接到主节点
+                replicaDetail.put("state", "disconnected");
+                degraded = true;
+            }
+            RedisServer sentinelReplica = sentinelView.get(address);
+            if (sentinelReplica != null) {
+                String flags = sentinelReplica.get("flags");
+                replicaDetail.put("flags", flags);
+                replicaDetail.put("masterLinkStatus", sentinelReplica.get("master-link-status"));
+                degraded |= hasFlag(flags, "s_down") || hasFlag(flags, "o_down");
+            }
+            replicaDetail.put("status", degraded ? HealthStatuses.DEGRADED.getCode() : Status.UP.getCode());
+            replicaDegraded |= degraded;
+            replicaDetails.put(address, replicaDetail);
+        }
+        details.put("replicas", replicaDetails);
+        if (replicaDegraded && Status.UP.equals(status)) {
+            status = HealthStatuses.DEGRADED;
+        }
+        builder.withDetail("sentinel", details);
+
+        if (HealthStatuses.FAILOVER.equals(status)) {
+            builder.status(status);
+        } else if (up && !Status.UP.equals(status)) {
+            builder.status(status);
+        }
+    }
+
+    /**
+     * 向哨兵查询当前主节点及其副本
+     *
+     * @return 主节点与副本
+     */
+    private SentinelTopology querySentinel() throws IOException {
+        try (RedisSentinelConnection sentinel = this.redisConnectionFactory.getSentinelConnection()) {
+            for (RedisServer master : sentinel.masters()) {
+                if (sentinelMaster.equals(master.getName())) {
+                    return new SentinelTopology(master, sentinel.replicas(master));
+                }
+            }
+        }
+        throw new IllegalStateException("Sentinel does not monitor master " + sentinelMaster);
+    }
+
+    /**
+     * 在每个副本的直连上并发PING，已不在拓扑中的副本连接随之关闭
+     *
+     * @param addresses 副本地址，host:port
+     * @return 每个副本的PING结果
+     */
+    private Map<String, ConcurrentProbes.ProbeResult<String>> pingReplicas(Set<String> addresses) {
+        retainNodeConnections(addresses);
+        Duration timeout = Duration.ofMillis(sentinelTimeoutMs);
+        Map<String, Callable<String>> tasks = new LinkedHashMap<>(addresses.size() * 2);
+        for (String address : addresses) {
+            tasks.put(address, () -> pingNode(address, timeout));
+        }
+        return ConcurrentProbes.invokeAll(getProbeExecutor(), tasks, sentinelTimeoutMs);
+    }
+
+    /**
+     * 关闭已不在拓扑中的节点的直连工厂
+     *
+     * @param addresses 当前的节点地址，host:port
+     */
+    private void retainNodeConnections(Set<String> addresses) {
+        for (Iterator<Map.Entry<String, RedisConnectionFactory>> iterator
+             = nodeConnectionFactories.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<String, RedisConnectionFactory> entry = iterator.next();
+            if (!addresses.contains(entry.getKey())) {
+                iterator.remove();
+                destroyQuietly(entry.getValue());
+            }
+        }
+    }
+
+    private String pingNode(String address, Duration timeout) {
+        RedisConnectionFactory factory = nodeConnectionFactories.computeIfAbsent(address, key -> {
+            int index = key.lastIndexOf(':');
+            return RedisHealthConnections.newNodeConnectionFactory(redisConnectionFactory,
+                key.substring(0, index), Integer.parseInt(key.substring(index + 1)), timeout);
+        });
+        if (factory == null) {
+            throw new IllegalStateException("Unsupported connection factory for node " + address);
+        }
+        // 直连不属于连接池，超时后由探测线程自行关闭
+        try (RedisConnection connection = factory.getConnection()) {
+            return connection.ping();
+        }
+    }
+
+    private static void destroyQuietly(RedisConnectionFactory factory) {
+        if (factory instanceof DisposableBean) {
+            try {
+                ((DisposableBean) factory).destroy();
+            } catch (Exception e) {
+                // 节点已下线，忽略关闭失败
+            }
+        }
+    }
+
+    private static boolean hasFlag(String flags, String flag) {
+        return flags != null && StringUtils.commaDelimitedListToSet(flags).contains(flag);
+    }
+
+    private static String describe(ConcurrentProbes.ProbeResult<?> probeResult) {
+        if (probeResult.isTimedOut()) {
+            return HealthStatuses.TIMEOUT.getCode();
+        }
+        return probeResult.getError() != null ? String.valueOf(probeResult.getError().getMessage()) : "unknown";
+    }
+
+    /**
+     * 将槽位压缩为区间，例如 0-5460,10923
+     */
+    static String toSlotRanges(Set<Integer> slots) {
+        StringBuilder ranges = new StringBuilder();
+        int start = -1;
+        int previous = -1;
+        for (int slot : new TreeSet<>(slots)) {
+            if (slot != previous + 1) {
+                appendSlotRange(ranges, start, previous);
+                start = slot;
+            }
+            previous = slot;
+        }
+        appendSlotRange(ranges, start, previous);
+        return ranges.toString();
+    }
+
+    private static void appendSlotRange(StringBuilder ranges, int start, int end) {
+        if (start < 0) {
+            return;
+        }
+        if (ranges.length() > 0) {
+            ranges.append(',');
+        }
+        ranges.append(start);
+        if (end > start) {
+            ranges.append('-').append(end);
+        }
+    }
+
+    private ExecutorService getProbeExecutor() {
+        ExecutorService executor = this.probeExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = this.probeExecutor;
+                if (executor == null) {
+                    executor = ConcurrentProbes.newExecutor("health-redis", clusterConcurrency);
+                    this.probeExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        ExecutorService executor = this.probeExecutor;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        this.nodeConnectionFactories.values().forEach(RedisHealthIndicator::destroyQuietly);
+        this.nodeConnectionFactories.clear();
+        synchronized (this.healthConnectionMonitor) {
+            closeHealthConnection();
+            if (this.healthConnectionFactory instanceof DisposableBean) {
+                ((DisposableBean) this.healthConnectionFactory).destroy();
+            }
+            this.healthConnectionFactory = null;
+        }
+    }
+
+    /**
+     * 哨兵视角的主节点与副本
+     */
+    private static final class SentinelTopology {
+
+        private final RedisServer master;
+
+        private final Collection<RedisServer> replicas;
+
+        private SentinelTopology(RedisServer master, Collection<RedisServer> replicas) {
+            this.master = master;
+            this.replicas = replicas;
+        }
+    }
+
+}
@@ -0,0 +1,119 @@
+import org.springframework.util.StringUtils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * 主节点 INFO replication 的解析结果
+ * slaveN 的值形如 ip=10.0.0.2,port=6379,state=online,offset=12345,lag=0，
+ * 复制偏移量落后 = master_repl_offset - offset
+ *
+ * @see RedisHealthIndicator
+ */
+final class RedisReplicationInfo {
+
+    private final String role;
+
+    private final long masterOffset;
+
+    private final Map<String, Replica> replicas;
+
+    private RedisReplicationInfo(String role, long masterOffset, Map<String, Replica> replicas) {
+        this.role = role;
+        this.masterOffset = masterOffset;
+        this.replicas = replicas;
+    }
+
+    /**
+     * 解析 INFO replication
+     *
+     * @param info INFO replication 的结果
+     * @return 解析结果
+     */
+    static RedisReplicationInfo parse(Properties info) {
+        long masterOffset = parseLong(info.getProperty("master_repl_offset"));
+        Map<String, Replica> replicas = new LinkedHashMap<>();
+        for (String key : info.stringPropertyNames()) {
+            if (!key.startsWith("slave") || !Character.isDigit(key.charAt(key.length() - 1))) {
+                continue;
+            }
+            Map<String, String> fields = new LinkedHashMap<>();
+            for (String field : StringUtils.commaDelimitedListToStringArray(info.getProperty(key))) {
+                int index = field.indexOf('=');
+                if (index > 0) {
+                    fields.put(field.substring(0, index), field.substring(index + 1));
+                }
+            }
+            Replica replica = new Replica(fields.get("state"), parseLong(fields.get("offset")),
+                parseLong(fields.get("lag")));
+            replicas.put(fields.get("ip") + ":" + fields.get("port"), replica);
+        }
+        return new RedisReplicationInfo(info.getProperty("role"), masterOffset, replicas);
+    }
+
+    private static long parseLong(String value) {
+        if (!StringUtils.hasText(value)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return 角色，master或slave
+     */
+    String getRole() {
+        return role;
+    }
+
+    /**
+     * @return 主节点的复制偏移量
+     */
+    long getMasterOffset() {
+        return masterOffset;
+    }
+
+    /**
+     * @return 以host:port为key的副本
+     */
+    Map<String, Replica> getReplicas() {
+        return replicas;
+    }
+
+    /**
+     * 主节点视角的副本
+     */
+    static final class Replica {
+
+        private final String state;
+
+        private final long offset;
+
+        private final long lagSeconds;
+
+        private Replica(String state, long offset, long lagSeconds) {
+            this.state = state;
+            this.offset = offset;
+            this.lagSeconds = lagSeconds;
+        }
+
+        String getState() {
+            return state;
+        }
+
+        long getOffset() {
+            return offset;
+        }
+
+        /**
+         * @return 距上次收到副本ACK的秒数
+         */
+        long getLagSeconds() {
+            return lagSeconds;
+        }
+    }
+}
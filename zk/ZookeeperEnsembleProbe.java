@@ -0,0 +1,343 @@
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.util.StringUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * zookeeper集群每个成员的四字命令探测
+ * 依次尝试 mntr、srvr、ruok(后两者用于未放开 mntr 白名单的服务端)，给出角色、积压请求、平均/最大延迟、
+ * 节点数与leader上已同步的follower数，据此判断集群是否将失去多数派或有成员过载；
+ * 记住每个成员接受的命令，之后每轮只建立一次连接，并记住成员最近一次的角色，observer不计入多数派的分母
+ *
+ * @see ZookeeperHealthIndicator
+ */
+class ZookeeperEnsembleProbe {
+
+    private static final int DEFAULT_PORT = 2181;
+
+    private static final String NOT_WHITELISTED = "not in the whitelist";
+
+    private static final String RUOK = "ruok";
+
+    private static final String[] COMMANDS = {"mntr", "srvr", RUOK};
+
+    /**
+     * 首轮可能对同一成员依次尝试三条命令，一轮的截止时间放宽为超时的三倍
+     */
+    private static final int ROUND_TIMEOUT_FACTOR = COMMANDS.length;
+
+    private final ExecutorService executor;
+
+    private final int timeoutMs;
+
+    private final long maxOutstandingRequests;
+
+    private final long maxAvgLatencyMs;
+
+    /**
+     * 每个成员接受的四字命令
+     */
+    private final Map<String, String> commands = new ConcurrentHashMap<>();
+
+    /**
+     * 每个成员最近一次探测到的角色，不可达时仍据此判断是否为observer
+     */
+    private final Map<String, String> modes = new ConcurrentHashMap<>();
+
+    ZookeeperEnsembleProbe(ExecutorService executor, int timeoutMs, long maxOutstandingRequests,
+                           long maxAvgLatencyMs) {
+        this.executor = executor;
+        this.timeoutMs = timeoutMs;
+        this.maxOutstandingRequests = maxOutstandingRequests;
+        this.maxAvgLatencyMs = maxAvgLatencyMs;
+    }
+
+    /**
+     * 并发探测连接串中的全部成员
+     *
+     * @param connectString 连接串，例如 zk1:2181,zk2:2181/chroot
+     * @return 集群状态
+     */
+    Result probe(String connectString) {
+        Map<String, Callable<Map<String, String>>> tasks = new LinkedHashMap<>();
+        for (String server : parseServers(connectString)) {
+            tasks.put(server, () -> stat(server));
+        }
+        commands.keySet().retainAll(tasks.keySet());
+        modes.keySet().retainAll(tasks.keySet());
+
+        Map<String, Object> servers = new LinkedHashMap<>();
+        int reachable = 0;
+        int voters = 0;
+        Long syncedFollowers = null;
+        boolean overloaded = false;
+        for (Map.Entry<String, ConcurrentProbes.ProbeResult<Map<String, String>>> entry
+            : ConcurrentProbes.invokeAll(executor, tasks, (long) timeoutMs * ROUND_TIMEOUT_FACTOR).entrySet()) {
+            ConcurrentProbes.ProbeResult<Map<String, String>> probeResult = entry.getValue();
+            Map<String, Object> server = new LinkedHashMap<>();
+            if (!probeResult.isSuccess()) {
+                server.put("status", probeResult.isTimedOut() ? HealthStatuses.TIMEOUT.getCode() : Status.DOWN.getCode());
+                if (probeResult.getError() != null) {
+                    server.put("error", probeResult.getError().getMessage());
+                }
+                servers.put(entry.getKey(), server);
+                continue;
+            }
+            reachable++;
+            Map<String, String> stats = probeResult.getValue();
+            String mode = stats.get("mode");
+            if (mode != null && !"unknown".equals(mode)) {
+                modes.put(entry.getKey(), mode);
+            }
+            // 只允许ruok时无法得知角色，可达的未知角色成员按投票成员计数，避免把健康的集群判为DOWN
+            if ("leader".equals(mode) || "follower".equals(mode) || "standalone".equals(mode)
+                || "unknown".equals(mode)) {
+                voters++;
+            }
+            if ("leader".equals(mode) && stats.containsKey("syncedFollowers")) {
+                syncedFollowers = parseLong(stats.get("syncedFollowers"));
+            }
+            boolean serverOverloaded = parseLong(stats.get("outstandingRequests")) > maxOutstandingRequests
+                || parseLong(stats.get("avgLatencyMs")) > maxAvgLatencyMs;
+            overloaded |= serverOverloaded;
+            server.put("status", serverOverloaded ? HealthStatuses.DEGRADED.getCode() : Status.UP.getCode());
+            server.putAll(stats);
+            servers.put(entry.getKey(), server);
+        }
+
+        int total = tasks.size();
+        // observer不参与投票，不计入多数派的分母；从未确定角色的成员按投票成员计入
+        int observers = 0;
+        for (String server : tasks.keySet()) {
+            if ("observer".equals(modes.get(server))) {
+                observers++;
+            }
+        }
+        int votingMembers = total - observers;
+        int quorum = votingMembers / 2 + 1;
+        Map<String, Object> details = new LinkedHashMap<>();
+        details.put("servers", servers);
+        details.put("reachable", reachable);
+        details.put("total", total);
+        details.put("observers", observers);
+        details.put("quorum", quorum);
+        if (syncedFollowers != null) {
+            details.put("syncedFollowers", syncedFollowers);
+        }
+        // leader的 zk_synced_followers 不含observer
+        int syncedVoters = syncedFollowers != null ? (int) (syncedFollowers + 1) : voters;
+        Status status;
+        if (votingMembers > 1 && (voters < quorum || syncedVoters < quorum)) {
+            status = Status.DOWN;
+        } else if (reachable < total || overloaded || (votingMembers > 1 && syncedVoters == quorum)) {
+            // 再失去一个成员就会失去多数派，或有成员过载
+            status = HealthStatuses.DEGRADED;
+        } else {
+            status = Status.UP;
+        }
+        return new Result(status, Collections.unmodifiableMap(details));
+    }
+
+    /**
+     * 优先使用该成员上次接受的命令，未知或已不再接受时依次尝试 mntr、srvr、ruok
+     */
+    private Map<String, String> stat(String server) throws IOException {
+        String accepted = commands.get(server);
+        if (accepted != null) {
+            Map<String, String> stats = stat(server, accepted);
+            if (stats != null) {
+                return stats;
+            }
+            commands.remove(server);
+        }
+        for (String command : COMMANDS) {
+            if (!command.equals(accepted)) {
+                Map<String, String> stats = stat(server, command);
+                if (stats != null) {
+                    commands.put(server, command);
+                    return stats;
+                }
+            }
+        }
+        throw new IOException("ruok is not in the whitelist");
+    }
+
+    /**
+     * 发送一条四字命令并解析结果
+     *
+     * @return 命令未放开白名单时为null
+     */
+    private Map<String, String> stat(String server, String command) throws IOException {
+        String response = send(server, command);
+        if (response.contains(NOT_WHITELISTED) || (!StringUtils.hasText(response) && !RUOK.equals(command))) {
+            return null;
+        }
+        switch (command) {
+            case "mntr":
+                return parseMntr(response);
+            case "srvr":
+                return parseSrvr(response);
+            default:
+                if (!"imok".equals(response.trim())) {
+                    throw new IOException("ruok returned " + response.trim());
+                }
+                Map<String, String> stats = new LinkedHashMap<>();
+                stats.put("mode", "unknown");
+                return stats;
+        }
+    }
+
+    private String send(String server, String command) throws IOException {
+        int index = server.lastIndexOf(':');
+        String host = server.substring(0, index);
+        if (host.startsWith("[") && host.endsWith("]")) {
+            host = host.substring(1, host.length() - 1);
+        }
+        int port = Integer.parseInt(server.substring(index + 1));
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(host, port), timeoutMs);
+            socket.setSoTimeout(timeoutMs);
+            OutputStream outputStream = socket.getOutputStream();
+            outputStream.write(command.getBytes(StandardCharsets.US_ASCII));
+            outputStream.flush();
+            StringBuilder response = new StringBuilder();
+            try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    response.append(line).append('\n');
+                }
+            }
+            return response.toString();
+        }
+    }
+
+    /**
+     * mntr 每行为 key\tvalue
+     */
+    private static Map<String, String> parseMntr(String mntr) {
+        Map<String, String> values = new LinkedHashMap<>();
+        for (String line : mntr.split("\n")) {
+            int index = line.indexOf('\t');
+            if (index > 0) {
+                values.put(line.substring(0, index).trim(), line.substring(index + 1).trim());
+            }
+        }
+        Map<String, String> stats = new LinkedHashMap<>();
+        putIfPresent(stats, "mode", values.get("zk_server_state"));
+        putIfPresent(stats, "outstandingRequests", values.get("zk_outstanding_requests"));
+        putIfPresent(stats, "avgLatencyMs", values.get("zk_avg_latency"));
+        putIfPresent(stats, "maxLatencyMs", values.get("zk_max_latency"));
+        putIfPresent(stats, "znodeCount", values.get("zk_znode_count"));
+        putIfPresent(stats, "followers", values.get("zk_followers"));
+        putIfPresent(stats, "syncedFollowers", values.get("zk_synced_followers"));
+        putIfPresent(stats, "pendingSyncs", values.get("zk_pending_syncs"));
+        return stats;
+    }
+
+    /**
+     * srvr 每行为 key: value，延迟为 min/avg/max
+     */
+    private static Map<String, String> parseSrvr(String srvr) {
+        Map<String, String> values = new LinkedHashMap<>();
+        for (String line : srvr.split("\n")) {
+            int index = line.indexOf(':');
+            if (index > 0) {
+                values.put(line.substring(0, index).trim(), line.substring(index + 1).trim());
+            }
+        }
+        Map<String, String> stats = new LinkedHashMap<>();
+        putIfPresent(stats, "mode", values.get("Mode"));
+        putIfPresent(stats, "outstandingRequests", values.get("Outstanding"));
+        String latency = values.get("Latency min/avg/max");
+        if (latency != null) {
+            String[] parts = latency.split("/");
+            if (parts.length == 3) {
+                stats.put("avgLatencyMs", parts[1]);
+                stats.put("maxLatencyMs", parts[2]);
+            }
+        }
+        putIfPresent(stats, "znodeCount", values.get("Node count"));
+        return stats;
+    }
+
+    private static void putIfPresent(Map<String, String> stats, String key, String value) {
+        if (value != null) {
+            stats.put(key, value);
+        }
+    }
+
+    private static long parseLong(String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            // 旧版本的平均延迟可能带小数
+            return (long) Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * 解析连接串中的成员，去掉chroot，缺省端口为2181
+     */
+    static Iterable<String> parseServers(String connectString) {
+        String servers = connectString;
+        int chroot = servers.indexOf('/');
+        if (chroot >= 0) {
+            servers = servers.substring(0, chroot);
+        }
+        Map<String, Boolean> result = new LinkedHashMap<>();
+        for (String server : StringUtils.commaDelimitedListToStringArray(servers)) {
+            server = server.trim();
+            if (server.isEmpty()) {
+                continue;
+            }
+            result.put(server.lastIndexOf(':') > server.lastIndexOf(']') ? server : server + ":" + DEFAULT_PORT,
+                Boolean.TRUE);
+        }
+        return result.keySet();
+    }
+
+    /**
+     * 集群状态
+     */
+    static final class Result {
+
+        private final Status status;
+
+        private final Map<String, Object> details;
+
+        private final long probedAt = System.currentTimeMillis();
+
+        private Result(Status status, Map<String, Object> details) {
+            this.status = status;
+            this.details = details;
+        }
+
+        Status getStatus() {
+            return status;
+        }
+
+        Map<String, Object> getDetails() {
+            return details;
+        }
+
+        long getProbedAt() {
+            return probedAt;
+        }
+    }
+}
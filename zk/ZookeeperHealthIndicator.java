@@ -1,47 +1,300 @@
-import org.apache.curator.framework.CuratorFramework;
-import org.apache.curator.framework.imps.CuratorFrameworkState;
-import org.apache.zookeeper.data.Stat;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.actuate.health.AbstractHealthIndicator;
-import org.springframework.boot.actuate.health.Health;
-
-/**
- * zookeeper的健康检查器
- * 重构自 org.springframework.cloud.zookeeper.ZookeeperHealthIndicator
- * 添加耗时的展示
- * 将该类注册到spring中时，即可替代默认实现
- * 如果系统使用了spring-cloud-starter-zookeeper，还需要将其AutoConfiguration移除
- * @SpringBootApplication(exclude = {ZookeeperHealthAutoConfiguration.class})
- *
- * @see org.springframework.cloud.zookeeper.ZookeeperHealthIndicator
- * @see DefaultZookeeperConfig
- */
-public class ZookeeperHealthIndicator extends AbstractHealthIndicator {
-
-    @Autowired
-    protected CuratorFramework curator;
-
-    @Override
-    protected void doHealthCheck(Health.Builder builder) throws Exception {
-        try {
-            CuratorFrameworkState state = curator.getState();
-            if (state == CuratorFrameworkState.STARTED) {
-                // 增加耗时统计
-                long starTime = System.currentTimeMillis();
-                Stat stat = curator.checkExists().forPath("/");
-                long entTime = System.currentTimeMillis();
-                builder.withDetail("timeMs", entTime - starTime);
-                if (stat != null) {
-                    builder.up();
-                } else {
-                    builder.down().withDetail("error", "Root for namespace does not exist");
-                }
-            } else {
-                builder.down().withDetail("error", "Client not started");
-            }
-        } catch (Exception e) {
-            builder.down(e);
-        }
-    }
-
-}
\ No newline at end of file
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.CuratorEvent;
+import org.apache.curator.framework.imps.CuratorFrameworkState;
+import org.apache.curator.framework.state.ConnectionState;
+import org.apache.curator.framework.state.ConnectionStateListener;
+import org.apache.zookeeper.KeeperException;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * zookeeper的健康检查器
+ * 重构自 org.springframework.cloud.zookeeper.ZookeeperHealthIndicator
+ * 添加耗时的展示
+ * 状态来自Curator的连接状态事件(CONNECTED、SUSPENDED、LOST、RECONNECTED)，读取健康状态时不访问zookeeper；
+ * 耗时由后台定时发出的异步 checkExists 在回调中采样，会话挂起时为SUSPENDED
+ * 可选定时向集群每个成员发送四字命令(mntr/srvr/ruok)，将失去多数派时为DOWN，有成员过载或不可达时为DEGRADED
+ * 将该类注册到spring中时，即可替代默认实现
+ * 如果系统使用了spring-cloud-starter-zookeeper，还需要将其AutoConfiguration移除
+ * @SpringBootApplication(exclude = {ZookeeperHealthAutoConfiguration.class})
+ *
+ * @see org.springframework.cloud.zookeeper.ZookeeperHealthIndicator
+ * @see DefaultZookeeperConfig
+ */
+@HealthCost(HealthCostTier.IN_MEMORY)
+public class ZookeeperHealthIndicator extends AbstractHealthIndicator implements MeterBinder, ConnectionStateListener,
+    InitializingBean, DisposableBean, LatencyWindowAware {
+
+    @Autowired
+    protected CuratorFramework curator;
+
+    /**
+     * 后台采样的间隔，毫秒
+     */
+    @Value("${management.health.zookeeper.sample-interval-ms:5000}")
+    private long sampleIntervalMs = 5000;
+
+    /**
+     * 最近一次采样早于该倍数的间隔时视为过期，报告DEGRADED
+     */
+    @Value("${management.health.zookeeper.stale-factor:3}")
+    private int staleFactor = 3;
+
+    /**
+     * 为true时定时向连接串中的每个成员发送四字命令，给出集群状态
+     */
+    @Value("${management.health.zookeeper.ensemble.enabled:false}")
+    private boolean ensembleEnabled;
+
+    /**
+     * 四字命令的连接与读取超时，也是一轮探测的截止时间，毫秒
+     */
+    @Value("${management.health.zookeeper.ensemble.timeout-ms:1000}")
+    private int ensembleTimeoutMs = 1000;
+
+    /**
+     * 积压请求超过该值的成员视为过载
+     */
+    @Value("${management.health.zookeeper.ensemble.max-outstanding-requests:100}")
+    private long ensembleMaxOutstandingRequests = 100;
+
+    /**
+     * 平均延迟超过该值的成员视为过载，毫秒
+     */
+    @Value("${management.health.zookeeper.ensemble.max-avg-latency-ms:100}")
+    private long ensembleMaxAvgLatencyMs = 100;
+
+    private ExecutorService ensembleExecutor;
+
+    private ScheduledExecutorService ensembleScheduler;
+
+    private volatile ZookeeperEnsembleProbe.Result ensemble;
+
+    private final LatencyHistogram latencyHistogram = new LatencyHistogram();
+
+    private final HealthProbeMetrics metrics = new HealthProbeMetrics("zk");
+
+    private volatile ConnectionState connectionState;
+
+    private volatile long connectionStateChangedAt;
+
+    private volatile Sample lastSample;
+
+    private final AtomicBoolean sampling = new AtomicBoolean();
+
+    private ScheduledExecutorService scheduler;
+
+    @Override
+    public void setLatencyWindowMs(long windowMs) {
+        this.latencyHistogram.setWindowMs(windowMs);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.metrics.bindTo(registry);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        start();
+    }
+
+    /**
+     * 注册连接状态监听并开始后台采样，重复调用无副作用
+     */
+    private synchronized void start() {
+        if (scheduler != null || curator == null) {
+            return;
+        }
+        curator.getConnectionStateListenable().addListener(this);
+        if (connectionState == null) {
+            setConnectionState(curator.getZookeeperClient().isConnected() ? ConnectionState.CONNECTED : null);
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(ConcurrentProbes.daemonThreadFactory("health-zk"));
+        scheduler.scheduleWithFixedDelay(this::sample, 0, sampleIntervalMs, TimeUnit.MILLISECONDS);
+        if (ensembleEnabled) {
+            ensembleExecutor = ConcurrentProbes.newExecutor("health-zk-ensemble", 8);
+            ZookeeperEnsembleProbe ensembleProbe = new ZookeeperEnsembleProbe(ensembleExecutor, ensembleTimeoutMs,
+                ensembleMaxOutstandingRequests, ensembleMaxAvgLatencyMs);
+            // 首轮最多对每个成员依次建立三次连接，之后只使用已接受的命令；使用独立的调度线程，不推迟会话采样
+            ensembleScheduler = Executors.newSingleThreadScheduledExecutor(
+                ConcurrentProbes.daemonThreadFactory("health-zk-ensemble-scheduler"));
+            ensembleScheduler.scheduleWithFixedDelay(() -> probeEnsemble(ensembleProbe), 0, sampleIntervalMs,
+                TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 向当前连接串中的全部成员发送四字命令，连接串随Curator的ensembleProvider变化
+     */
+    private void probeEnsemble(ZookeeperEnsembleProbe ensembleProbe) {
+        try {
+            this.ensemble = ensembleProbe.probe(curator.getZookeeperClient().getCurrentConnectionString());
+        } catch (RuntimeException e) {
+            // 保留上一次的结果，超过采样间隔的stale-factor倍后由健康检查标记为过期
+        }
+    }
+
+    @Override
+    public void stateChanged(CuratorFramework client, ConnectionState newState) {
+        setConnectionState(newState);
+        if (newState.isConnected() && scheduler != null) {
+            // 重新连上后立即采样一次，不必等下一个间隔
+            scheduler.execute(this::sample);
+        }
+    }
+
+    private void setConnectionState(ConnectionState connectionState) {
+        this.connectionState = connectionState;
+        this.connectionStateChangedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * 发出异步 checkExists，在回调中记录耗时；上一次还未返回时跳过
+     */
+    private void sample() {
+        if (curator.getState() != CuratorFrameworkState.STARTED || !sampling.compareAndSet(false, true)) {
+            return;
+        }
+        long startTime = System.nanoTime();
+        try {
+            curator.checkExists().inBackground((client, event) -> onSample(event, startTime)).forPath("/");
+        } catch (Exception e) {
+            sampling.set(false);
+            recordSample(new Sample(false, System.nanoTime() - startTime, e.getMessage()));
+        }
+    }
+
+    private void onSample(CuratorEvent event, long startTime) {
+        sampling.set(false);
+        long elapsed = System.nanoTime() - startTime;
+        KeeperException.Code code = KeeperException.Code.get(event.getResultCode());
+        if (code == KeeperException.Code.OK) {
+            recordSample(new Sample(true, elapsed, null));
+        } else if (code == KeeperException.Code.NONODE) {
+            recordSample(new Sample(false, elapsed, "Root for namespace does not exist"));
+        } else {
+            recordSample(new Sample(false, elapsed, code.name()));
+        }
+    }
+
+    private void recordSample(Sample sample) {
+        latencyHistogram.record(sample.elapsedNanos);
+        metrics.record(sample.elapsedNanos, sample.success ? Status.UP : Status.DOWN);
+        this.lastSample = sample;
+    }
+
+    @Override
+    protected void doHealthCheck(Health.Builder builder) throws Exception {
+        if (scheduler == null) {
+            start();
+        }
+        if (curator.getState() != CuratorFrameworkState.STARTED) {
+            builder.down().withDetail("error", "Client not started");
+            return;
+        }
+        ConnectionState connectionState = this.connectionState;
+        long now = System.currentTimeMillis();
+        builder.withDetail("connectionState", connectionState != null ? connectionState.name() : "UNKNOWN");
+        builder.withDetail("connectionStateAgeMs", now - connectionStateChangedAt);
+
+        Sample sample = this.lastSample;
+        if (sample != null) {
+            builder.withDetail("timeMs", TimeUnit.NANOSECONDS.toMillis(sample.elapsedNanos));
+            builder.withDetail("sampleAgeMs", now - sample.sampledAt);
+            builder.withDetail("latency", latencyHistogram.toDetails());
+            if (sample.error != null) {
+                builder.withDetail("error", sample.error);
+            }
+        }
+
+        Status status;
+        if (connectionState == ConnectionState.LOST) {
+            status = Status.DOWN;
+        } else if (connectionState == ConnectionState.SUSPENDED) {
+            // 会话可能还能恢复，与确定的DOWN区分
+            status = HealthStatuses.SUSPENDED;
+        } else if (connectionState == null || !connectionState.isConnected()) {
+            status = Status.UNKNOWN;
+        } else if (sample == null) {
+            status = Status.UP;
+            builder.withDetail("sample", "pending");
+        } else if (!sample.success) {
+            status = Status.DOWN;
+        } else if (now - sample.sampledAt > sampleIntervalMs * staleFactor) {
+            status = HealthStatuses.DEGRADED;
+            builder.withDetail("sample", "stale");
+        } else {
+            status = Status.UP;
+        }
+
+        ZookeeperEnsembleProbe.Result ensemble = this.ensemble;
+        if (ensemble != null) {
+            Map<String, Object> ensembleDetails = new LinkedHashMap<>();
+            ensembleDetails.put("status", ensemble.getStatus().getCode());
+            ensembleDetails.put("ageMs", now - ensemble.getProbedAt());
+            ensembleDetails.putAll(ensemble.getDetails());
+            Status ensembleStatus = ensemble.getStatus();
+            if (now - ensemble.getProbedAt() > sampleIntervalMs * staleFactor) {
+                // 与会话采样一致，过期的结果不再作为集群状态
+                ensembleDetails.put("stale", true);
+                ensembleStatus = HealthStatuses.DEGRADED;
+            }
+            builder.withDetail("ensemble", ensembleDetails);
+            if (Status.UP.equals(status) && !Status.UP.equals(ensembleStatus)) {
+                status = ensembleStatus;
+            }
+        }
+        builder.status(status);
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            curator.getConnectionStateListenable().removeListener(this);
+        }
+        if (ensembleScheduler != null) {
+            ensembleScheduler.shutdownNow();
+        }
+        if (ensembleExecutor != null) {
+            ensembleExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * 一次后台采样
+     */
+    private static final class Sample {
+
+        private final boolean success;
+
+        private final long elapsedNanos;
+
+        private final String error;
+
+        private final long sampledAt = System.currentTimeMillis();
+
+        private Sample(boolean success, long elapsedNanos, String error) {
+            this.success = success;
+            this.elapsedNanos = elapsedNanos;
+            this.error = error;
+        }
+    }
+
+}